@@ -0,0 +1,355 @@
+package com.github.amarcruz.rntextsize;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.uimanager.DisplayMetricsHolder;
+import com.facebook.soloader.SoLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Benchmarks of the measurement hot paths, with the real fonts and layout engine.
+ * Run them with `./gradlew connectedAndroidTest` in a release build of the tests.
+ *
+ * The module is created without the disk cache and the measurements go through the
+ * uncached entry points, so every iteration lays out the text. The functions that
+ * resolve a promise marshal their result as they do for JS.
+ *
+ * androidx.benchmark 1.0 only reports the time, the objects allocated per call are
+ * counted after the timed loop and sent in the instrumentation status with the key
+ * `<test>_allocationsPerCall`.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RNTextSizeBenchmarkTest {
+
+    private static final String TAG = "RNTextSizeBenchmark";
+    private static final int CORPUS_SIZE = 200;
+    private static final int BATCH_SIZE = 1000;
+    private static final int ALLOCATION_CALLS = 50;
+
+    @Rule
+    public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private ReactApplicationContext mReactContext;
+    private RNTextSizeModule mModule;
+    private RNTextSizeExecutor.Task mTask;
+    private Promise mPromise;
+    private float mDensity;
+
+    /**
+     * One call to the function under test, `ix` is the number of the call.
+     */
+    private abstract static class Call {
+        private final boolean mReset;
+
+        Call() {
+            this(false);
+        }
+
+        /**
+         * @param reset Call `reset` before each call, outside the timing
+         */
+        Call(final boolean reset) {
+            mReset = reset;
+        }
+
+        abstract void run(int ix);
+
+        void reset() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SoLoader.init(context, false);
+        DisplayMetricsHolder.initDisplayMetricsIfNotInitialized(context);
+
+        mReactContext = new ReactApplicationContext(context);
+        mModule = new RNTextSizeModule(mReactContext, 1, Collections.<String>emptyList(), false, null);
+        mTask = new RNTextSizeExecutor.Task(null, null);
+        mPromise = new PromiseImpl(null, null);
+        mDensity = DisplayMetricsHolder.getWindowDisplayMetrics().density;
+    }
+
+    @After
+    public void tearDown() {
+        mModule.onCatalystInstanceDestroy();
+    }
+
+    @Test
+    public void measureLabels() {
+        measure("measureLabels", RNTextSizeCorpus.LABELS);
+    }
+
+    @Test
+    public void measureParagraphs() {
+        measure("measureParagraphs", RNTextSizeCorpus.PARAGRAPHS);
+    }
+
+    @Test
+    public void measureMixed() {
+        measure("measureMixed", RNTextSizeCorpus.MIXED);
+    }
+
+    /**
+     * `measure` with `linesInfo`.
+     */
+    @Test
+    public void measureLinesInfo() {
+        final String[] texts = RNTextSizeCorpus.make(RNTextSizeCorpus.PARAGRAPHS, CORPUS_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs("linesInfo", true), true);
+
+        benchmark("measureLinesInfo", new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.measureLines(conf, texts[ix % texts.length], null);
+            }
+        });
+    }
+
+    /**
+     * `measure` with `splitParagraphs`, the cache of paragraphs is cleared before
+     * each call.
+     */
+    @Test
+    public void measureSplitParagraphs() {
+        final String[] texts = RNTextSizeCorpus.make(RNTextSizeCorpus.PARAGRAPHS, CORPUS_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs("splitParagraphs", true), true);
+        final float width = conf.getWidth(mDensity);
+
+        benchmark("measureSplitParagraphs", new Call(true) {
+            @Override
+            void run(final int ix) {
+                mModule.measureParagraphs(conf, texts[ix % texts.length], mDensity, width);
+            }
+
+            @Override
+            void reset() {
+                mModule.clearCache(mPromise);
+            }
+        });
+    }
+
+    /**
+     * Each text of the corpus split in three fragments, the last two in bold and italic.
+     */
+    @Test
+    public void measureFragments() {
+        final String[] texts = RNTextSizeCorpus.make(RNTextSizeCorpus.MIXED, CORPUS_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs(), true);
+        final List<List<String>> fragments = new ArrayList<>(texts.length);
+        final List<RNTextSizeConf> confs = Arrays.asList(
+                new RNTextSizeConf(JavaOnlyMap.of(), conf),
+                new RNTextSizeConf(JavaOnlyMap.of("fontWeight", "bold"), conf),
+                new RNTextSizeConf(JavaOnlyMap.of("fontStyle", "italic"), conf));
+
+        for (String text : texts) {
+            final int third = text.length() / 3;
+            fragments.add(Arrays.asList(
+                    text.substring(0, third),
+                    text.substring(third, third * 2),
+                    text.substring(third * 2)));
+        }
+
+        benchmark("measureFragments", new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.measureFragments(conf, fragments.get(ix % fragments.size()), confs);
+            }
+        });
+    }
+
+    @Test
+    public void measureWidths() {
+        final String[] texts = RNTextSizeCorpus.make(RNTextSizeCorpus.PARAGRAPHS, CORPUS_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs(), true);
+        final float[] widths = {120f, 240f, 320f};
+
+        benchmark("measureWidths", new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.measureWidths(conf, texts[ix % texts.length], widths, mTask, mPromise);
+            }
+        });
+    }
+
+    @Test
+    public void fitFontSize() {
+        final String[] texts = RNTextSizeCorpus.make(RNTextSizeCorpus.MIXED, CORPUS_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(
+                makeSpecs("height", 100.0, "minFontSize", 8.0, "maxFontSize", 40.0), true);
+
+        benchmark("fitFontSize", new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.flatFitFontSize(conf, new String[]{texts[ix % texts.length]}, mTask, mPromise, true);
+            }
+        });
+    }
+
+    @Test
+    public void flatHeightsParagraphs() {
+        flatHeights("flatHeightsParagraphs", RNTextSizeCorpus.make(RNTextSizeCorpus.PARAGRAPHS, CORPUS_SIZE));
+    }
+
+    @Test
+    public void flatHeightsBatch() {
+        flatHeights("flatHeightsBatch", RNTextSizeCorpus.make(RNTextSizeCorpus.BATCH, BATCH_SIZE));
+    }
+
+    /**
+     * The whole batch per call, the estimator of the style is built in the first one.
+     */
+    @Test
+    public void flatHeightsEstimate() {
+        final String[] texts = RNTextSizeCorpus.make(RNTextSizeCorpus.BATCH, BATCH_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs(), true);
+
+        benchmark("flatHeightsEstimate", new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.flatHeightsEstimate(conf, texts, mTask, mPromise);
+            }
+        });
+    }
+
+    /**
+     * The whole batch per call, in the binary format.
+     */
+    @Test
+    public void flatMeasure() {
+        final String[] texts = RNTextSizeCorpus.make(RNTextSizeCorpus.BATCH, BATCH_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs("binary", true), true);
+        final float[] widths = new float[texts.length];
+        Arrays.fill(widths, Float.NaN);
+
+        benchmark("flatMeasure", new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.flatMeasure(conf, texts, widths, mTask, mPromise);
+            }
+        });
+    }
+
+    /**
+     * Same path of `fontFromSpecs` on a miss of its cache, with the conf it uses.
+     */
+    @Test
+    public void fontFromSpecs() {
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs(), false);
+
+        benchmark("fontFromSpecs", new Call() {
+            @Override
+            void run(final int ix) {
+                final Typeface typeface = RNTextSizeConf.getFont(mReactContext, conf.fontFamily, conf.fontStyle);
+                final int fontSize = (int) Math.ceil(conf.scale(conf.fontSize));
+                RNTextSizeModule.makeFontInfo(conf.fontFamily, typeface, fontSize, mDensity);
+            }
+        });
+    }
+
+    /**
+     * One text of the corpus per call.
+     */
+    private void measure(@Nonnull final String name, @Nonnull final String corpus) {
+        final String[] texts = RNTextSizeCorpus.make(corpus, CORPUS_SIZE);
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs(), true);
+        final float width = conf.getWidth(mDensity);
+
+        benchmark(name, new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.layoutText(conf, texts[ix % texts.length], mDensity, width, null);
+            }
+        });
+    }
+
+    /**
+     * The whole array per call, in one chunk.
+     */
+    private void flatHeights(@Nonnull final String name, @Nonnull final String[] texts) {
+        final RNTextSizeConf conf = new RNTextSizeConf(makeSpecs(), true);
+        final float[] heights = new float[texts.length];
+
+        benchmark(name, new Call() {
+            @Override
+            void run(final int ix) {
+                mModule.measureHeights(conf, texts, 0, texts.length, heights, mTask, false, null);
+            }
+        });
+    }
+
+    /**
+     * Runs the timed loop, then counts the objects allocated by this thread in
+     * ALLOCATION_CALLS more calls. The counting slows down the runtime, so it is
+     * not enabled while timing.
+     */
+    @SuppressWarnings("deprecation")
+    private void benchmark(@Nonnull final String name, @Nonnull final Call call) {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int ix = 0;
+
+        while (state.keepRunning()) {
+            if (call.mReset) {
+                state.pauseTiming();
+                call.reset();
+                state.resumeTiming();
+            }
+            call.run(ix++);
+        }
+
+        long allocations = 0L;
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < ALLOCATION_CALLS; i++) {
+                call.reset();
+                final int start = Debug.getThreadAllocCount();
+                call.run(i);
+                allocations += Debug.getThreadAllocCount() - start;
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        final double perCall = (double) allocations / ALLOCATION_CALLS;
+        final Bundle status = new Bundle();
+        status.putDouble(name + "_allocationsPerCall", perCall);
+        InstrumentationRegistry.getInstrumentation().sendStatus(2, status);
+        Log.i(TAG, name + ": " + perCall + " allocations per call");
+    }
+
+    @Nonnull
+    private static JavaOnlyMap makeSpecs(@Nonnull final Object... keysAndValues) {
+        final Object[] specs = Arrays.copyOf(keysAndValues, keysAndValues.length + 4);
+        specs[keysAndValues.length] = "fontSize";
+        specs[keysAndValues.length + 1] = 16.0;
+        specs[keysAndValues.length + 2] = "width";
+        specs[keysAndValues.length + 3] = 320.0;
+        return JavaOnlyMap.of(specs);
+    }
+}
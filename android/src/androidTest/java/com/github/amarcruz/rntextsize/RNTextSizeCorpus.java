@@ -0,0 +1,92 @@
+package com.github.amarcruz.rntextsize;
+
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Corpora for the benchmarks, generated with a fixed seed so the results of
+ * different versions of RN or this library can be compared.
+ */
+final class RNTextSizeCorpus {
+
+    static final String LABELS = "labels";
+    static final String PARAGRAPHS = "paragraphs";
+    static final String MIXED = "mixed";
+    static final String BATCH = "batch";
+
+    private static final long SEED = 0x7E475123L;
+
+    private static final String[] LABEL_WORDS = {
+            "OK", "Cancel", "Send", "Reply", "Share", "@jdoe", "@marcruz", "12:45 PM",
+            "Yesterday", "3 min ago", "Follow", "Following", "1.2k likes", "Settings",
+    };
+
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+            "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+            "magna", "aliqua", "enim", "ad", "minim", "veniam", "quis", "nostrud",
+            "exercitation", "ullamco", "laboris", "nisi", "aliquip", "ex", "ea", "commodo",
+    };
+
+    // Emoji (with modifiers and ZWJ sequences), CJK, Hebrew, Arabic, Greek, Cyrillic, Devanagari
+    private static final String[] MIXED_WORDS = {
+            "hello", "world", "\uD83D\uDE00", "\uD83D\uDC4D\uD83C\uDFFD", "\uD83C\uDF89",
+            "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67", "\u6F22\u5B57", "\u304B\u306A",
+            "\u30AB\u30BF\u30AB\u30CA", "\uD55C\uAD6D\uC5B4", "\u4E2D\u6587\u5B57\u7B26",
+            "\u05E9\u05DC\u05D5\u05DD", "\u05E2\u05D5\u05DC\u05DD",
+            "\u0645\u0631\u062D\u0628\u0627", "\u0628\u0627\u0644\u0639\u0627\u0644\u0645",
+            "\u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC",
+            "\u041A\u0438\u0440\u0438\u043B\u043B\u0438\u0446\u0430",
+            "\u0928\u092E\u0938\u094D\u0924\u0947",
+    };
+
+    private RNTextSizeCorpus() {}
+
+    /**
+     * Generates one of the corpora, the same name and size always gives the same texts.
+     */
+    @Nonnull
+    static String[] make(@Nonnull final String name, final int size) {
+        final Random random = new Random(SEED);
+        final String[] texts = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            switch (name) {
+                case LABELS:
+                    texts[i] = LABEL_WORDS[i % LABEL_WORDS.length];
+                    break;
+                case PARAGRAPHS:
+                    texts[i] = words(random, WORDS, 60 + random.nextInt(60));
+                    break;
+                case MIXED:
+                    texts[i] = words(random, MIXED_WORDS, 4 + random.nextInt(12));
+                    break;
+                default:
+                    // batch, like a chat history
+                    texts[i] = random.nextInt(4) == 0
+                            ? words(random, MIXED_WORDS, 2 + random.nextInt(8))
+                            : words(random, WORDS, 2 + random.nextInt(30));
+                    break;
+            }
+        }
+        return texts;
+    }
+
+    @Nonnull
+    private static String words(
+            @Nonnull final Random random,
+            @Nonnull final String[] words,
+            final int count
+    ) {
+        final StringBuilder sb = new StringBuilder(count * 8);
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(random.nextInt(12) == 0 ? '\n' : ' ');
+            }
+            sb.append(words[random.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+}
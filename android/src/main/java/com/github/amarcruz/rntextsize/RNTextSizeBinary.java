@@ -0,0 +1,74 @@
+package com.github.amarcruz.rntextsize;
+
+import android.util.Base64;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Encoding of the results of the batch functions.
+ *
+ * With the `binary` option, the arrays of the result are packed in one buffer and
+ * sent to JS as a base64 string, so the bridge handles one string instead of one
+ * boxed number for each value. The buffer has the arrays one after the other, in
+ * the documented order, each with 4 bytes per value in little-endian: Float32 for
+ * the measures and Int32 for the counts.
+ */
+final class RNTextSizeBinary {
+
+    private RNTextSizeBinary() {}
+
+    /**
+     * Packs the float arrays followed by the int arrays.
+     */
+    @Nonnull
+    static String encode(@Nonnull final float[][] floats, @Nonnull final int[][] ints) {
+        int size = 0;
+        for (float[] values : floats) {
+            size += values.length;
+        }
+        for (int[] values : ints) {
+            size += values.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float[] values : floats) {
+            buffer.asFloatBuffer().put(values);
+            buffer.position(buffer.position() + values.length * 4);
+        }
+        for (int[] values : ints) {
+            buffer.asIntBuffer().put(values);
+            buffer.position(buffer.position() + values.length * 4);
+        }
+
+        return Base64.encodeToString(buffer.array(), Base64.NO_WRAP);
+    }
+
+    @Nonnull
+    static String encode(@Nonnull final float[] values) {
+        return encode(new float[][]{values}, new int[0][]);
+    }
+
+    @Nonnull
+    static WritableArray toArray(@Nonnull final float[] values) {
+        final WritableArray array = Arguments.createArray();
+        for (float value : values) {
+            array.pushDouble(value);
+        }
+        return array;
+    }
+
+    @Nonnull
+    static WritableArray toArray(@Nonnull final int[] values) {
+        final WritableArray array = Arguments.createArray();
+        for (int value : values) {
+            array.pushInt(value);
+        }
+        return array;
+    }
+}
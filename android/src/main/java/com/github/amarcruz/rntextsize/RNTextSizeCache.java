@@ -0,0 +1,79 @@
+package com.github.amarcruz.rntextsize;
+
+import android.util.LruCache;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * LRU cache of `measure` results, keyed by the text and the canonical key of the
+ * options that affect the measurement (see {@link RNTextSizeConf#getMeasureKey}).
+ *
+ * The size is the approximate memory used by the entries, limited to a fraction of
+ * the available heap. All the cached values are discarded when the density or the
+ * font scale of the device changes.
+ */
+final class RNTextSizeCache extends LruCache<String, RNTextSizeResult> {
+
+    private static final int MAX_CACHE_SIZE = 2 * 1024 * 1024;
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private float mDensity = Float.NaN;
+    private float mFontScale = Float.NaN;
+    private int mInvalidations = 0;
+
+    RNTextSizeCache() {
+        super(getMaxCacheSize());
+    }
+
+    /**
+     * Use 1/64 of the heap, but no more than 2MB.
+     */
+    private static int getMaxCacheSize() {
+        final long maxMemory = Runtime.getRuntime().maxMemory() / 64;
+        return (int) Math.min(maxMemory, MAX_CACHE_SIZE);
+    }
+
+    @Nonnull
+    static String makeKey(@Nonnull final String measureKey, @Nonnull final String text) {
+        return new StringBuilder(measureKey.length() + text.length() + 1)
+                .append(measureKey)
+                .append(KEY_SEPARATOR)
+                .append(text)
+                .toString();
+    }
+
+    /**
+     * Clears the cache if the density or the font scale has changed.
+     */
+    synchronized void validate(final float density, final float fontScale) {
+        if (density != mDensity || fontScale != mFontScale) {
+            if (!Float.isNaN(mDensity)) {
+                mInvalidations++;
+                evictAll();
+            }
+            mDensity = density;
+            mFontScale = fontScale;
+        }
+    }
+
+    @Override
+    protected int sizeOf(final String key, final RNTextSizeResult value) {
+        // chars + String object overhead + entry overhead + result
+        return key.length() * 2 + 64 + RNTextSizeResult.sizeOf();
+    }
+
+    @Nonnull
+    synchronized WritableMap getStats() {
+        final WritableMap stats = Arguments.createMap();
+        stats.putInt("size", size());
+        stats.putInt("maxSize", maxSize());
+        stats.putInt("hits", hitCount());
+        stats.putInt("misses", missCount());
+        stats.putInt("evictions", evictionCount());
+        stats.putInt("invalidations", mInvalidations);
+        return stats;
+    }
+}
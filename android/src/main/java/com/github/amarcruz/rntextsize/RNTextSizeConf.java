@@ -5,15 +5,20 @@ import android.os.Build;
 import android.text.Layout;
 import android.util.Log;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.JSApplicationIllegalArgumentException;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.uimanager.PixelUtil;
 import com.facebook.react.views.text.ReactFontManager;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -36,6 +41,15 @@ final class RNTextSizeConf {
         reactNativeVersion = version;
     }
 
+    // Typefaces by family and style, so the measurements don't touch the font manager
+    private static final ConcurrentHashMap<String, Typeface> sTypefaces = new ConcurrentHashMap<>();
+    private static final AtomicInteger sTypefaceHits = new AtomicInteger();
+    private static final AtomicInteger sTypefaceMisses = new AtomicInteger();
+
+    private static final int[] FONT_STYLES = {
+            Typeface.NORMAL, Typeface.BOLD, Typeface.ITALIC, Typeface.BOLD_ITALIC
+    };
+
     /**
      * Make a Typeface from the supplied font family and style.
      */
@@ -45,11 +59,52 @@ final class RNTextSizeConf {
             @Nullable String family,
             final int style
     ) {
-        final Typeface typeface = family != null
-                ? ReactFontManager.getInstance().getTypeface(family, style, context.getAssets())
-                : null;
+        if (family == null) {
+            return Typeface.defaultFromStyle(style);
+        }
+
+        final String key = family + '|' + style;
+        Typeface typeface = sTypefaces.get(key);
+
+        if (typeface != null) {
+            sTypefaceHits.incrementAndGet();
+            return typeface;
+        }
+        sTypefaceMisses.incrementAndGet();
+
+        // ReactFontManager is not thread-safe and we measure in several threads
+        synchronized (ReactFontManager.class) {
+            typeface = ReactFontManager.getInstance().getTypeface(family, style, context.getAssets());
+        }
+        if (typeface == null) {
+            typeface = Typeface.defaultFromStyle(style);
+        }
+
+        final Typeface prev = sTypefaces.putIfAbsent(key, typeface);
+        return prev != null ? prev : typeface;
+    }
+
+    /**
+     * Load the typefaces of the given families in all the styles.
+     */
+    static void preloadFonts(
+            @Nonnull final ReactApplicationContext context,
+            @Nonnull final List<String> families
+    ) {
+        for (String family : families) {
+            for (int style : FONT_STYLES) {
+                getFont(context, family, style);
+            }
+        }
+    }
 
-        return typeface != null ? typeface : Typeface.defaultFromStyle(style);
+    @Nonnull
+    static WritableMap getTypefaceStats() {
+        final WritableMap stats = Arguments.createMap();
+        stats.putInt("size", sTypefaces.size());
+        stats.putInt("hits", sTypefaceHits.get());
+        stats.putInt("misses", sTypefaceMisses.get());
+        return stats;
     }
 
     // letterSpacing is supported in RN 0.55+
@@ -61,15 +116,43 @@ final class RNTextSizeConf {
         return reactNativeVersion >= 57;
     }
 
+    // ReadableMap is not thread-safe, only the modules thread can read it
     private final ReadableMap mOpts;
     private final boolean allowFontScaling;
 
+    // Registered style of this conf, see `registerStyle`
+    @Nullable private final RNTextSizeConf mBase;
+    private final int mTextBreakStrategy;
+
+    final int styleId;
+
     final String fontFamily;
     final float fontSize;
     final int fontStyle;
     final boolean includeFontPadding;
     final float letterSpacing;
 
+    // The font specs include fontStyle or fontWeight
+    final boolean hasFontStyle;
+
+    // Per-call options, parsed in the constructor so the measurement threads
+    // do not touch the ReadableMap. numberOfLines is Integer.MAX_VALUE if not given
+    final float width;
+    final float height;
+    final float maxHeight;
+    final int numberOfLines;
+    final float minFontSize;
+    final float maxFontSize;
+    @Nullable final Integer lineInfoForLine;
+    final boolean linesInfo;
+    @Nullable final Integer linesInfoStart;
+    @Nullable final Integer linesInfoEnd;
+    final boolean usePreciseWidth;
+    final boolean usePrecomputedText;
+    final boolean splitParagraphs;
+    final boolean binary;
+    final boolean parallel;
+
     /**
      * Proccess the user specs. Set both `allowFontScaling` & `includeFontPadding` to the user
      * value or the default `true` only if we have the `forText` flag.
@@ -78,26 +161,149 @@ final class RNTextSizeConf {
      * @param forText This will be used for measure text?
      */
     RNTextSizeConf(@Nonnull final ReadableMap options, final boolean forText) {
+        this(options, null, null, -1, forText);
+    }
+
+    /**
+     * Makes the conf of a fragment of rich text. The font properties that are not in
+     * the fragment are inherited from the parent, includeFontPadding and
+     * textBreakStrategy always come from the parent.
+     *
+     * @param fragment Fragment with its font properties
+     * @param parent The conf of the whole text, or its registered style
+     */
+    RNTextSizeConf(@Nonnull final ReadableMap fragment, @Nonnull final RNTextSizeConf parent) {
+        this(fragment, null, parent, -1, true);
+    }
+
+    /**
+     * Makes a conf with the style of a registered conf, without parsing the font
+     * properties again. The per-call options (text, width, etc) are read from
+     * `options` and the font properties in it are ignored.
+     *
+     * @param options User options
+     * @param base The registered conf
+     * @param styleId ID of the registered style
+     * @param forText This will be used for measure text?
+     */
+    RNTextSizeConf(
+            @Nonnull final ReadableMap options,
+            @Nonnull final RNTextSizeConf base,
+            final int styleId,
+            final boolean forText
+    ) {
+        this(options, base, null, styleId, forText);
+    }
+
+    /**
+     * The per-call options and textBreakStrategy are only parsed `forText`, the
+     * font info does not use them.
+     *
+     * @param base Registered style, the font properties of the options are ignored
+     * @param parent Conf with the default font properties, for fragments
+     */
+    private RNTextSizeConf(
+            @Nonnull final ReadableMap options,
+            @Nullable final RNTextSizeConf base,
+            @Nullable final RNTextSizeConf parent,
+            final int styleId,
+            final boolean forText
+    ) {
         mOpts = options;
+        mBase = base;
+        this.styleId = styleId;
 
-        allowFontScaling = forText && getBooleanOrTrue("allowFontScaling");
-        fontFamily = getString("fontFamily");
-        fontSize = getFontSizeOrDefault();
-        fontStyle = getFontStyle();
-        includeFontPadding = forText && getBooleanOrTrue("includeFontPadding");
+        if (base != null) {
+            allowFontScaling = base.allowFontScaling;
+            fontFamily = base.fontFamily;
+            fontSize = base.fontSize;
+            fontStyle = base.fontStyle;
+            hasFontStyle = base.hasFontStyle;
+            includeFontPadding = base.includeFontPadding;
+            letterSpacing = base.letterSpacing;
+            mTextBreakStrategy = base.mTextBreakStrategy;
+        } else if (parent != null) {
+            allowFontScaling = inherits("allowFontScaling")
+                    ? parent.allowFontScaling : getBooleanOrTrue("allowFontScaling");
+            fontFamily = inherits("fontFamily") ? parent.fontFamily : getString("fontFamily");
+            fontSize = inherits("fontSize") ? parent.fontSize : getFontSizeOrDefault();
+            fontStyle = getFontStyle(parent.fontStyle);
+            hasFontStyle = parent.hasFontStyle || !inherits("fontStyle") || !inherits("fontWeight");
+            includeFontPadding = parent.includeFontPadding;
+            letterSpacing = supportLetterSpacing() && !inherits("letterSpacing")
+                    ? getFloatOrNaN("letterSpacing") : parent.letterSpacing;
+            mTextBreakStrategy = parent.mTextBreakStrategy;
+        } else {
+            allowFontScaling = forText && getBooleanOrTrue("allowFontScaling");
+            fontFamily = getString("fontFamily");
+            fontSize = getFontSizeOrDefault();
+            fontStyle = getFontStyle(Typeface.NORMAL);
+            hasFontStyle = mOpts.hasKey("fontStyle") || mOpts.hasKey("fontWeight");
+            includeFontPadding = forText && getBooleanOrTrue("includeFontPadding");
+
+            // letterSpacing is supported in RN 0.55+
+            letterSpacing = supportLetterSpacing() ? getFloatOrNaN("letterSpacing") : Float.NaN;
+            mTextBreakStrategy = forText ? parseTextBreakStrategy() : defaultTextBreakStrategy();
+        }
 
-        // letterSpacing is supported in RN 0.55+
-        letterSpacing = supportLetterSpacing() ? getFloatOrNaN("letterSpacing") : Float.NaN;
+        if (forText) {
+            final Integer _numberOfLines = getIntOrNull("numberOfLines");
+
+            width = getFloatOrNaN("width");
+            height = getFloatOrNaN("height");
+            maxHeight = getFloatOrNaN("maxHeight");
+            numberOfLines = _numberOfLines != null && _numberOfLines > 0
+                    ? _numberOfLines : Integer.MAX_VALUE;
+            minFontSize = getFloatOrNaN("minFontSize");
+            maxFontSize = getFloatOrNaN("maxFontSize");
+            lineInfoForLine = getIntOrNull("lineInfoForLine");
+            linesInfo = getBooleanOrFalse("linesInfo");
+            linesInfoStart = getIntOrNull("linesInfoStart");
+            linesInfoEnd = getIntOrNull("linesInfoEnd");
+            usePreciseWidth = getBooleanOrTrue("usePreciseWidth");
+            usePrecomputedText = getBooleanOrFalse("usePrecomputedText");
+            splitParagraphs = getBooleanOrFalse("splitParagraphs");
+            binary = getBooleanOrFalse("binary");
+            parallel = getBooleanOrTrue("parallel");
+        } else {
+            width = Float.NaN;
+            height = Float.NaN;
+            maxHeight = Float.NaN;
+            numberOfLines = Integer.MAX_VALUE;
+            minFontSize = Float.NaN;
+            maxFontSize = Float.NaN;
+            lineInfoForLine = null;
+            linesInfo = false;
+            linesInfoStart = null;
+            linesInfoEnd = null;
+            usePreciseWidth = true;
+            usePrecomputedText = false;
+            splitParagraphs = false;
+            binary = false;
+            parallel = true;
+        }
+    }
+
+    /**
+     * The registered conf for this one, or this conf if it has no registered style.
+     */
+    @Nonnull
+    RNTextSizeConf getBase() {
+        return mBase != null ? mBase : this;
     }
 
     boolean has(@Nonnull final String name) {
-        return mOpts.hasKey(name);
+        return mOpts.hasKey(name) || mBase != null && mBase.has(name);
     }
 
     boolean getBooleanOrTrue(@Nonnull final String name) {
         return !mOpts.hasKey(name) || mOpts.getBoolean(name);
     }
 
+    boolean getBooleanOrFalse(@Nonnull final String name) {
+        return mOpts.hasKey(name) && mOpts.getBoolean(name);
+    }
+
     Integer getIntOrNull(@Nonnull final String name) {
         return mOpts.hasKey(name)
                 ? mOpts.getInt(name) : null;
@@ -105,7 +311,7 @@ final class RNTextSizeConf {
 
     @Nullable
     String getString(@Nonnull final String name) {
-        return mOpts.hasKey(name)
+        return mOpts.hasKey(name) && mOpts.getType(name) == ReadableType.String
                 ? mOpts.getString(name) : null;
     }
 
@@ -122,7 +328,6 @@ final class RNTextSizeConf {
     }
 
     float getWidth(final float density) {
-        float width = getFloatOrNaN("width");
         if (!Float.isNaN(width) && width > 0) {
             return width * density;                // always DIP
         } else {
@@ -130,7 +335,33 @@ final class RNTextSizeConf {
         }
     }
 
+    /**
+     * The `maxHeight` option in pixels, or Float.MAX_VALUE if there's no limit.
+     */
+    float getMaxHeight(final float density) {
+        if (!Float.isNaN(maxHeight) && maxHeight > 0) {
+            return maxHeight * density;            // always DIP
+        } else {
+            return Float.MAX_VALUE;
+        }
+    }
+
+    /**
+     * The `numberOfLines` or `maxHeight` options limit the lines of the result.
+     */
+    boolean hasLineLimit() {
+        return numberOfLines != Integer.MAX_VALUE || getMaxHeight(1f) != Float.MAX_VALUE;
+    }
+
     int getTextBreakStrategy() {
+        return mTextBreakStrategy;
+    }
+
+    private static int defaultTextBreakStrategy() {
+        return Build.VERSION.SDK_INT < 23 ? 0 : Layout.BREAK_STRATEGY_HIGH_QUALITY;
+    }
+
+    private int parseTextBreakStrategy() {
         if (Build.VERSION.SDK_INT < 23) {
             return 0;
         }
@@ -150,7 +381,29 @@ final class RNTextSizeConf {
                             "Invalid textBreakStrategy: " + textBreakStrategy);
             }
         }
-        return Layout.BREAK_STRATEGY_HIGH_QUALITY;
+        return defaultTextBreakStrategy();
+    }
+
+    /**
+     * Canonical key of the options that affect the result of `measure`.
+     * The width is in pixels, as returned by {@link #getWidth}.
+     */
+    @Nonnull
+    String getMeasureKey(final float width) {
+        return new StringBuilder(64)
+                .append(fontFamily).append('|')
+                .append(fontSize).append('|')
+                .append(fontStyle).append('|')
+                .append(letterSpacing).append('|')
+                .append(allowFontScaling ? 'S' : 'D')
+                .append(includeFontPadding ? 'P' : 'N')
+                .append(usePreciseWidth ? 'W' : 'L')
+                .append(getTextBreakStrategy()).append('|')
+                .append((int) Math.ceil(width)).append('|')
+                .append(lineInfoForLine != null ? lineInfoForLine : -1).append('|')
+                .append(numberOfLines).append('|')
+                .append(maxHeight)
+                .toString();
     }
 
     private float getFloatOrNaN(@Nonnull final String name) {
@@ -168,11 +421,30 @@ final class RNTextSizeConf {
         return DEF_FONTSIZE;
     }
 
-    private int getFontStyle() {
-        int style = "italic".equals(getString("fontStyle")) ? Typeface.ITALIC : Typeface.NORMAL;
+    /**
+     * The options without a value for a property inherit it from the parent conf.
+     */
+    private boolean inherits(@Nonnull final String name) {
+        return !mOpts.hasKey(name) || mOpts.isNull(name);
+    }
+
+    /**
+     * @param inherited Style with the italic and bold flags used if fontStyle or
+     *                  fontWeight are not given
+     */
+    private int getFontStyle(final int inherited) {
+        int style;
+
+        if (inherits("fontStyle")) {
+            style = inherited & Typeface.ITALIC;
+        } else {
+            style = "italic".equals(getString("fontStyle")) ? Typeface.ITALIC : Typeface.NORMAL;
+        }
 
         final String weight = getString("fontWeight");
-        if (weight != null) {
+        if (inherits("fontWeight")) {
+            style |= inherited & Typeface.BOLD;
+        } else if (weight != null) {
             switch (weight) {
                 case "bold":
                 case "900":
@@ -0,0 +1,290 @@
+package com.github.amarcruz.rntextsize;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Persistent cache of measurements, so the texts measured in the last run of the
+ * App are not measured again at startup.
+ *
+ * The entries are keyed by a 64-bit hash of the text, the options, the density and
+ * the font scale. The file header has a fingerprint of the OS build, the App version
+ * and the fonts in assets; if any of these changes, the file is ignored.
+ *
+ * The file is loaded in background, until then all the lookups are misses. New
+ * entries are written by {@link #flush} with the least recently used first, so the
+ * order of the LRU is kept between runs.
+ */
+final class RNTextSizeDiskCache {
+    private static final String TAG = "RNTextSize";
+    private static final String FILE_NAME = "RNTextSize-measures.bin";
+
+    private static final int MAGIC = 0x524E5453;    // "RNTS"
+    private static final int VERSION = 2;
+
+    static final int MAX_ENTRIES = 20000;          // about 920KB in disk
+
+    // Number of new entries that make a flush convenient
+    private static final int FLUSH_THRESHOLD = 500;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Context mContext;
+
+    // Serializes the writes, always taken before the lock of the instance
+    private final Object mFileLock = new Object();
+    private final LinkedHashMap<Long, RNTextSizeResult> mEntries =
+            new LinkedHashMap<Long, RNTextSizeResult>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Long, RNTextSizeResult> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private volatile boolean mLoaded;
+    private long mFingerprint;
+    private int mPending;
+    private int mHits;
+    private int mMisses;
+
+    RNTextSizeDiskCache(@Nonnull final Context context) {
+        mContext = context;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the key, with the density and the font scale.
+     */
+    static long hash(final float density, final float fontScale, @Nonnull final String key) {
+        long hash = FNV_OFFSET;
+
+        hash = (hash ^ Float.floatToIntBits(density)) * FNV_PRIME;
+        hash = (hash ^ Float.floatToIntBits(fontScale)) * FNV_PRIME;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Reads the file, must run in background.
+     */
+    void load() {
+        final long fingerprint = makeFingerprint();
+        final File file = getFile();
+        final LinkedHashMap<Long, RNTextSizeResult> entries = new LinkedHashMap<>();
+
+        if (file.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == fingerprint) {
+                    final int count = Math.min(in.readInt(), MAX_ENTRIES);
+                    for (int i = 0; i < count; i++) {
+                        final long key = in.readLong();
+                        entries.put(key, new RNTextSizeResult(
+                                in.readFloat(), in.readFloat(), in.readFloat(), in.readInt(), in.readBoolean(),
+                                in.readInt(), in.readInt(), in.readInt(), in.readFloat(), in.readFloat()));
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot read the measurements cache.", e);
+                entries.clear();
+            } finally {
+                close(in);
+            }
+        }
+
+        synchronized (this) {
+            // Keep the entries added while loading as the most recent ones
+            final LinkedHashMap<Long, RNTextSizeResult> added = new LinkedHashMap<>(mEntries);
+            mEntries.clear();
+            mEntries.putAll(entries);
+            mEntries.putAll(added);
+            mFingerprint = fingerprint;
+            mLoaded = true;
+        }
+    }
+
+    @Nullable
+    synchronized RNTextSizeResult get(final long key) {
+        final RNTextSizeResult result = mLoaded ? mEntries.get(key) : null;
+        if (result != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return result;
+    }
+
+    /**
+     * @return `true` if there are enough new entries to flush the cache.
+     */
+    synchronized boolean put(final long key, @Nonnull final RNTextSizeResult result) {
+        mEntries.put(key, result);
+        return ++mPending >= FLUSH_THRESHOLD && mLoaded;
+    }
+
+    synchronized boolean isDirty() {
+        return mPending > 0 && mLoaded;
+    }
+
+    /**
+     * Writes the entries to a temporary file that replaces the current one.
+     */
+    void flush() {
+        synchronized (mFileLock) {
+            final long fingerprint;
+            final Long[] keys;
+            final RNTextSizeResult[] results;
+
+            synchronized (this) {
+                if (!mLoaded || mPending == 0) {
+                    return;
+                }
+                fingerprint = mFingerprint;
+                keys = mEntries.keySet().toArray(new Long[0]);
+                results = mEntries.values().toArray(new RNTextSizeResult[0]);
+                mPending = 0;
+            }
+
+            final File file = getFile();
+            final File temp = new File(file.getPath() + ".tmp");
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    final RNTextSizeResult result = results[i];
+                    out.writeLong(keys[i]);
+                    out.writeFloat(result.width);
+                    out.writeFloat(result.height);
+                    out.writeFloat(result.lastLineWidth);
+                    out.writeInt(result.lineCount);
+                    out.writeBoolean(result.truncated);
+                    out.writeInt(result.line);
+                    out.writeInt(result.lineStart);
+                    out.writeInt(result.lineEnd);
+                    out.writeFloat(result.lineBottom);
+                    out.writeFloat(result.lineWidth);
+                }
+                out.close();
+                out = null;
+
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Cannot rename " + temp);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot write the measurements cache.", e);
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            } finally {
+                close(out);
+            }
+        }
+    }
+
+    /**
+     * Discards all the entries, including the file.
+     */
+    void clear() {
+        synchronized (mFileLock) {
+            synchronized (this) {
+                mEntries.clear();
+                mPending = 0;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            getFile().delete();
+        }
+    }
+
+    @Nonnull
+    synchronized WritableMap getStats() {
+        final WritableMap stats = Arguments.createMap();
+        stats.putBoolean("loaded", mLoaded);
+        stats.putInt("size", mEntries.size());
+        stats.putInt("maxSize", MAX_ENTRIES);
+        stats.putInt("hits", mHits);
+        stats.putInt("misses", mMisses);
+        return stats;
+    }
+
+    @Nonnull
+    private File getFile() {
+        return new File(mContext.getCacheDir(), FILE_NAME);
+    }
+
+    /**
+     * Hash of the OS build, the App version and the fonts in assets.
+     */
+    private long makeFingerprint() {
+        final StringBuilder sb = new StringBuilder(256)
+                .append(Build.VERSION.SDK_INT).append('|')
+                .append(Build.FINGERPRINT).append('|');
+
+        sb.append(getAppVersion(mContext)).append('|');
+
+        try {
+            final String[] fonts = mContext.getAssets().list("fonts");
+            if (fonts != null) {
+                Arrays.sort(fonts);
+                for (String font : fonts) {
+                    sb.append(font).append('|');
+                }
+            }
+        } catch (IOException e) {
+            Log.v(TAG, "Cannot list the fonts in assets.", e);
+        }
+
+        return hash(0f, 0f, sb.toString());
+    }
+
+    /**
+     * Version code and update time of the App, these change with each install.
+     * Also used by the font catalog.
+     */
+    @Nonnull
+    static String getAppVersion(@Nonnull final Context context) {
+        try {
+            final PackageInfo info = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0);
+            return info.versionCode + "|" + info.lastUpdateTime;
+        } catch (Exception e) {
+            Log.v(TAG, "Cannot get the App version.", e);
+            return "";
+        }
+    }
+
+    static void close(@Nullable final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.amarcruz.rntextsize;
+
+import android.graphics.Paint;
+import android.text.TextPaint;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Fast approximation of the height of a text, without StaticLayout.
+ *
+ * It uses a table with the advance of each Latin character for a style and a greedy
+ * word wrap, breaking lines only at spaces and after hyphens. Kerning, ligatures and
+ * the "highQuality" line breaking are ignored, so the line count may be different
+ * from the one of StaticLayout in long paragraphs. The height of each line comes
+ * from the font metrics, as in StaticLayout.
+ *
+ * Texts with other characters (emojis, complex scripts, tabs) are not supported,
+ * the caller must measure them with the exact path.
+ */
+final class RNTextSizeEstimator {
+
+    // Basic Latin, Latin-1 Supplement, Latin Extended-A and B
+    private static final char FIRST_CHAR = ' ';
+    private static final char LAST_CHAR = '\u024F';
+
+    private final float[] mAdvances;
+    private final int mLineHeight;
+    private final int mPadding;
+
+    RNTextSizeEstimator(@Nonnull final RNTextSizeStyle style) {
+        final TextPaint textPaint = style.newPaint();
+        final char[] chars = new char[LAST_CHAR - FIRST_CHAR + 1];
+
+        // Measure each char alone, getTextWidths over the whole string would include
+        // the kerning with the previous char.
+        mAdvances = new float[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (FIRST_CHAR + i);
+            mAdvances[i] = textPaint.measureText(chars, i, 1);
+        }
+
+        final Paint.FontMetricsInt metrics = textPaint.getFontMetricsInt();
+        mLineHeight = metrics.descent - metrics.ascent;
+
+        // With includeFontPadding, StaticLayout uses `top` for the first line and
+        // `bottom` for the last one.
+        mPadding = style.includeFontPadding
+                ? metrics.ascent - metrics.top + metrics.bottom - metrics.descent : 0;
+    }
+
+    /**
+     * Returns the estimated number of lines of the text for the given width in
+     * pixels, or -1 if the text has characters that are not supported.
+     */
+    int getLineCount(@Nonnull final String text, final float width) {
+        final float spaceWidth = mAdvances[0];
+        final int length = text.length();
+
+        int lines = 1;
+        float line = 0f;        // width of the current line, without trailing spaces
+        float spaces = 0f;      // spaces after the last word of the line
+        float word = 0f;        // width of the word being read
+
+        for (int i = 0; i <= length; i++) {
+            final char ch = i < length ? text.charAt(i) : '\n';
+            final boolean hyphen = ch == '-';
+
+            if (ch != ' ' && ch != '\n') {
+                if (ch < FIRST_CHAR || ch > LAST_CHAR) {
+                    return -1;
+                }
+                word += mAdvances[ch - FIRST_CHAR];
+                if (!hyphen) {
+                    continue;
+                }
+            }
+
+            // End of a word, place it in the current line or in a new one
+            if (word > 0f) {
+                if (line > 0f && line + spaces + word > width) {
+                    lines++;
+                    line = 0f;
+                } else {
+                    line += spaces;
+                }
+                if (line + word > width) {
+                    // Words longer than the width are broken at any char
+                    final int extra = (int) Math.ceil((line + word) / width) - 1;
+                    lines += extra;
+                    line = line + word - extra * width;
+                } else {
+                    line += word;
+                }
+                spaces = 0f;
+                word = 0f;
+            }
+
+            if (ch == ' ') {
+                spaces += spaceWidth;
+            } else if (ch == '\n' && i < length) {
+                lines++;
+                line = 0f;
+                spaces = 0f;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Height in pixels of the given number of lines.
+     */
+    int getHeight(final int lineCount) {
+        return lineCount * mLineHeight + mPadding;
+    }
+}
@@ -0,0 +1,249 @@
+package com.github.amarcruz.rntextsize;
+
+import android.os.Process;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Runs the measurements outside the native modules thread.
+ *
+ * There are two lanes: a single thread for small (interactive) requests and a pool
+ * for big batches, so a `measure` call is never waiting behind a batch of thousands
+ * of texts. Requests with an ID can be cancelled from JS, batches check the flag
+ * before each element. Jobs not related to a request, like loading the caches, run
+ * in a third lane with its own thread.
+ */
+final class RNTextSizeExecutor {
+
+    /**
+     * Requests with more elements than this go to the batch lane.
+     */
+    static final int BATCH_THRESHOLD = 64;
+
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+    private static final String E_CANCELLED = "E_CANCELLED";
+
+    private final ExecutorService mInteractive;
+    private final ExecutorService mBatch;
+    private final ExecutorService mBackground;
+    private final ExecutorService mParallel;
+    private final int mParallelism;
+    private final ConcurrentHashMap<String, Task> mTasks = new ConcurrentHashMap<>();
+
+    /**
+     * Handle of a running request.
+     */
+    static final class Task {
+        @Nullable final String requestId;
+        @Nullable final Promise promise;
+        private volatile boolean mCancelled;
+
+        Task(@Nullable final String requestId, @Nullable final Promise promise) {
+            this.requestId = requestId;
+            this.promise = promise;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+    }
+
+    /**
+     * @param poolSize Number of threads for the batch lane, zero or less to use the
+     *                 number of available processors less one (the UI thread).
+     */
+    RNTextSizeExecutor(final int poolSize) {
+        final int batchThreads = poolSize > 0
+                ? poolSize : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        mInteractive = makePool("RNTextSize-interactive", 1, Process.THREAD_PRIORITY_DEFAULT);
+        mBatch = makePool("RNTextSize-batch", batchThreads, Process.THREAD_PRIORITY_BACKGROUND);
+        mBackground = makePool("RNTextSize-background", 1, Process.THREAD_PRIORITY_BACKGROUND);
+
+        // Workers for the chunks of a batch, the chunk 0 runs in the batch thread.
+        mParallelism = Runtime.getRuntime().availableProcessors();
+        mParallel = makePool("RNTextSize-worker", Math.max(1, mParallelism - 1),
+                Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    /**
+     * Number of chunks in which a batch can be divided.
+     */
+    int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * Registers a request. If another request with the same ID is running, it is cancelled.
+     * The promise is rejected if the request is still queued when the module is destroyed.
+     */
+    @Nonnull
+    Task start(@Nullable final String requestId, @Nonnull final Promise promise) {
+        final Task task = new Task(requestId, promise);
+
+        if (requestId != null) {
+            final Task prev = mTasks.put(requestId, task);
+            if (prev != null) {
+                prev.cancel();
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Runs the job in the lane that corresponds to the number of elements to measure.
+     */
+    void execute(@Nonnull final Task task, final int size, @Nonnull final Runnable job) {
+        final ExecutorService lane = size > BATCH_THRESHOLD ? mBatch : mInteractive;
+
+        lane.execute(new Job(task.promise) {
+            @Override
+            public void run() {
+                try {
+                    job.run();
+                } finally {
+                    if (task.requestId != null) {
+                        mTasks.remove(task.requestId, task);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a job with low priority, not related to any request.
+     */
+    void background(@Nonnull final Runnable job) {
+        mBackground.execute(job);
+    }
+
+    /**
+     * Runs a job with low priority, the promise is rejected if the job is still queued
+     * when the module is destroyed.
+     */
+    void background(@Nonnull final Runnable job, @Nonnull final Promise promise) {
+        mBackground.execute(new Job(promise) {
+            @Override
+            public void run() {
+                job.run();
+            }
+        });
+    }
+
+    /**
+     * Runs the jobs in parallel and waits for all of them. The first job runs in the
+     * calling thread, the workers are not shared with the lanes to avoid deadlocks.
+     */
+    void runParallel(@Nonnull final Runnable[] jobs) throws InterruptedException, ExecutionException {
+        final List<Future<?>> futures = new ArrayList<>(jobs.length);
+
+        for (int i = 1; i < jobs.length; i++) {
+            futures.add(mParallel.submit(jobs[i]));
+        }
+        if (jobs.length > 0) {
+            jobs[0].run();
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * @return `true` if there was a running request with the given ID.
+     */
+    boolean cancel(@Nonnull final String requestId) {
+        final Task task = mTasks.remove(requestId);
+
+        if (task != null) {
+            task.cancel();
+            return true;
+        }
+        return false;
+    }
+
+    void shutdown() {
+        for (Task task : mTasks.values()) {
+            task.cancel();
+        }
+        mTasks.clear();
+        rejectAll(mInteractive.shutdownNow());
+        rejectAll(mBatch.shutdownNow());
+        rejectAll(mBackground.shutdownNow());
+        mParallel.shutdownNow();
+    }
+
+    /**
+     * Rejects the promises of the jobs that were not started.
+     */
+    private static void rejectAll(@Nonnull final List<Runnable> pending) {
+        for (Runnable runnable : pending) {
+            if (runnable instanceof Job) {
+                final Promise promise = ((Job) runnable).promise;
+                if (promise != null) {
+                    promise.reject(E_CANCELLED, "The module was destroyed.");
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued job with the promise of its request.
+     */
+    private abstract static class Job implements Runnable {
+        @Nullable final Promise promise;
+
+        Job(@Nullable final Promise promise) {
+            this.promise = promise;
+        }
+    }
+
+    @Nonnull
+    private static ExecutorService makePool(
+            @Nonnull final String name,
+            final int threads,
+            final int priority
+    ) {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@Nonnull final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(priority);
+                                r.run();
+                            }
+                        }, name + "-" + mCount.incrementAndGet());
+                    }
+                });
+
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
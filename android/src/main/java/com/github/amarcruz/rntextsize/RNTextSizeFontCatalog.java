@@ -0,0 +1,508 @@
+package com.github.amarcruz.rntextsize;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Index of the fonts in assets/fonts, with the names and the weight of each face.
+ *
+ * The names come from the `name` table and the weight and italic flag from the
+ * `OS/2` table of each .ttf/.otf file. Only the table directory and these two
+ * tables are read from the asset stream, the glyphs are never loaded.
+ *
+ * The index is saved in the cache dir. The fonts in assets cannot change without
+ * an update of the App, so the file is valid while the App version is the same.
+ */
+final class RNTextSizeFontCatalog {
+    private static final String TAG = "RNTextSize";
+    private static final String FILE_NAME = "RNTextSize-fonts.bin";
+    private static final String FONTS_ASSET_PATH = "fonts";
+    private static final String[] FILE_EXTENSIONS = {".ttf", ".otf"};
+
+    private static final int MAGIC = 0x524E5446;    // "RNTF"
+    private static final int VERSION = 1;
+
+    // Tags of the tables and the sfnt versions
+    private static final int TAG_NAME = 0x6E616D65;     // "name"
+    private static final int TAG_OS2 = 0x4F532F32;      // "OS/2"
+    private static final int SFNT_TRUETYPE = 0x00010000;
+    private static final int SFNT_CFF = 0x4F54544F;     // "OTTO"
+    private static final int SFNT_APPLE = 0x74727565;   // "true"
+
+    // IDs in the name table
+    private static final int NAME_FAMILY = 1;
+    private static final int NAME_SUBFAMILY = 2;
+    private static final int NAME_FULL = 4;
+    private static final int NAME_TYPO_FAMILY = 16;
+    private static final int NAME_TYPO_SUBFAMILY = 17;
+
+    // The name and OS/2 tables are small, bigger ones are invalid
+    private static final int MAX_TABLE_LENGTH = 1024 * 1024;
+
+    private static final Charset UTF_16BE = Charset.forName("UTF-16BE");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * A font file in assets.
+     */
+    static final class Face {
+        @Nonnull final String fontFamily;       // name of the asset, as used in RN
+        @Nonnull final String family;
+        @Nonnull final String subfamily;
+        @Nonnull final String fullName;
+        final int weight;
+        final boolean italic;
+
+        Face(
+                @Nonnull final String fontFamily,
+                @Nonnull final String family,
+                @Nonnull final String subfamily,
+                @Nonnull final String fullName,
+                final int weight,
+                final boolean italic
+        ) {
+            this.fontFamily = fontFamily;
+            this.family = family;
+            this.subfamily = subfamily;
+            this.fullName = fullName;
+            this.weight = weight;
+            this.italic = italic;
+        }
+
+        @Nonnull
+        WritableMap toMap() {
+            final WritableMap map = Arguments.createMap();
+            map.putString("fontFamily", fontFamily);
+            map.putString("familyName", family);
+            map.putString("subfamilyName", subfamily);
+            map.putString("fullName", fullName);
+            map.putString("fontWeight", Integer.toString(weight));
+            map.putString("fontStyle", italic ? "italic" : "normal");
+            return map;
+        }
+    }
+
+    // Faces sorted by weight, normal first
+    private static final Comparator<Face> FACE_ORDER = new Comparator<Face>() {
+        @Override
+        public int compare(final Face a, final Face b) {
+            if (a.weight != b.weight) {
+                return a.weight < b.weight ? -1 : 1;
+            }
+            if (a.italic != b.italic) {
+                return a.italic ? 1 : -1;
+            }
+            return a.fontFamily.compareTo(b.fontFamily);
+        }
+    };
+
+    private final Context mContext;
+
+    // Faces by family name and by asset name, case insensitive
+    private TreeMap<String, List<Face>> mFamilies;
+    private String[] mAssetNames;
+
+    RNTextSizeFontCatalog(@Nonnull final Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Names of the fonts in assets, without extension and sorted. These are the
+     * names used as `fontFamily` in RN, the real family names are in the faces.
+     */
+    @Nonnull
+    synchronized String[] getAssetNames() {
+        load();
+        return mAssetNames;
+    }
+
+    /**
+     * Faces of a family, by its name in the fonts or the name of any of its assets.
+     */
+    @Nullable
+    synchronized List<Face> getFaces(@Nonnull final String familyName) {
+        load();
+        return mFamilies.get(familyName);
+    }
+
+    /**
+     * Asset names of the faces, these can be used as `fontFamily` in RN.
+     */
+    @Nonnull
+    static WritableArray toNames(@Nonnull final List<Face> faces) {
+        final WritableArray array = Arguments.createArray();
+        for (Face face : faces) {
+            array.pushString(face.fontFamily);
+        }
+        return array;
+    }
+
+    @Nonnull
+    static WritableArray toMaps(@Nonnull final List<Face> faces) {
+        final WritableArray array = Arguments.createArray();
+        for (Face face : faces) {
+            array.pushMap(face.toMap());
+        }
+        return array;
+    }
+
+    /**
+     * Loads the index from the cache dir or makes it from the assets, must run
+     * with the lock of the instance.
+     */
+    private void load() {
+        if (mFamilies != null) {
+            return;
+        }
+
+        final String version = RNTextSizeDiskCache.getAppVersion(mContext);
+        List<Face> faces = readIndex(version);
+        if (faces == null) {
+            faces = readAssets();
+            writeIndex(version, faces);
+        }
+
+        final TreeMap<String, List<Face>> families = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final TreeSet<String> assetNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (Face face : faces) {
+            assetNames.add(face.fontFamily);
+            addFace(families, face.family, face);
+        }
+        // Make the family of each face reachable by the asset name too
+        for (Face face : faces) {
+            if (!families.containsKey(face.fontFamily)) {
+                families.put(face.fontFamily, families.get(face.family));
+            }
+        }
+        for (List<Face> list : families.values()) {
+            Collections.sort(list, FACE_ORDER);
+        }
+
+        mFamilies = families;
+        mAssetNames = assetNames.toArray(new String[0]);
+    }
+
+    private static void addFace(
+            @Nonnull final TreeMap<String, List<Face>> families,
+            @Nonnull final String name,
+            @Nonnull final Face face
+    ) {
+        List<Face> list = families.get(name);
+        if (list == null) {
+            list = new ArrayList<>();
+            families.put(name, list);
+        }
+        list.add(face);
+    }
+
+    @Nonnull
+    private List<Face> readAssets() {
+        final ArrayList<Face> faces = new ArrayList<>();
+        final AssetManager assetManager = mContext.getAssets();
+
+        String[] list = null;
+        try {
+            list = assetManager != null ? assetManager.list(FONTS_ASSET_PATH) : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot list the fonts in assets.", e);
+        }
+        if (list == null) {
+            return faces;
+        }
+
+        // The same name may have both extensions, keep the first one
+        final TreeSet<String> names = new TreeSet<>();
+        Arrays.sort(list);
+
+        for (String file : list) {
+            for (String ext : FILE_EXTENSIONS) {
+                if (file.endsWith(ext)) {
+                    final String name = file.substring(0, file.length() - ext.length());
+                    if (names.add(name)) {
+                        faces.add(readFace(assetManager, file, name));
+                    }
+                    break;
+                }
+            }
+        }
+        return faces;
+    }
+
+    /**
+     * Reads the names and the style of the font, the asset name is used for the
+     * properties that cannot be read.
+     */
+    @Nonnull
+    private static Face readFace(
+            @Nonnull final AssetManager assetManager,
+            @Nonnull final String file,
+            @Nonnull final String name
+    ) {
+        final String[] names = new String[NAME_TYPO_SUBFAMILY + 1];
+        int weight = 400;
+        boolean italic = false;
+
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(assetManager.open(FONTS_ASSET_PATH + '/' + file, AssetManager.ACCESS_STREAMING));
+            final FontReader reader = new FontReader(in);
+
+            final int sfntVersion = reader.readInt();
+            if (sfntVersion != SFNT_TRUETYPE && sfntVersion != SFNT_CFF && sfntVersion != SFNT_APPLE) {
+                throw new IOException("Unsupported font format");
+            }
+            final int numTables = reader.readUShort();
+            reader.skipTo(12);
+
+            // Offset and length of the tables, in the order of the directory
+            int nameOffset = -1;
+            int nameLength = 0;
+            int os2Offset = -1;
+            int os2Length = 0;
+            for (int i = 0; i < numTables; i++) {
+                final int tag = reader.readInt();
+                reader.readInt();           // checksum
+                final int offset = reader.readInt();
+                final int length = reader.readInt();
+                if (tag == TAG_NAME) {
+                    nameOffset = offset;
+                    nameLength = length;
+                } else if (tag == TAG_OS2) {
+                    os2Offset = offset;
+                    os2Length = length;
+                }
+            }
+
+            // The stream only goes forward, read the tables in the order of their offsets
+            byte[] nameTable = null;
+            byte[] os2Table = null;
+            if (os2Offset >= 0 && (nameOffset < 0 || os2Offset < nameOffset)) {
+                os2Table = reader.readTable(os2Offset, os2Length);
+                nameTable = nameOffset >= 0 ? reader.readTable(nameOffset, nameLength) : null;
+            } else if (nameOffset >= 0) {
+                nameTable = reader.readTable(nameOffset, nameLength);
+                os2Table = os2Offset >= 0 ? reader.readTable(os2Offset, os2Length) : null;
+            }
+
+            if (nameTable != null) {
+                readNames(nameTable, names);
+            }
+            // usWeightClass and fsSelection
+            if (os2Table != null && os2Table.length >= 64) {
+                weight = getUShort(os2Table, 4);
+                italic = (getUShort(os2Table, 62) & 1) != 0;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read the font " + file, e);
+        } finally {
+            RNTextSizeDiskCache.close(in);
+        }
+
+        final String family = firstOf(names[NAME_TYPO_FAMILY], names[NAME_FAMILY], name);
+        final String subfamily = firstOf(names[NAME_TYPO_SUBFAMILY], names[NAME_SUBFAMILY], "Regular");
+        final String fullName = firstOf(names[NAME_FULL], name, name);
+
+        return new Face(name, family, subfamily, fullName, weight, italic);
+    }
+
+    /**
+     * Sets the names with the IDs we need, preferring the English names of Windows.
+     */
+    private static void readNames(@Nonnull final byte[] table, @Nonnull final String[] names) {
+        final int count = getUShort(table, 2);
+        final int stringOffset = getUShort(table, 4);
+        final int[] scores = new int[names.length];
+
+        for (int i = 0; i < count; i++) {
+            final int record = 6 + i * 12;
+            if (record + 12 > table.length) {
+                break;
+            }
+            final int platformId = getUShort(table, record);
+            final int languageId = getUShort(table, record + 4);
+            final int nameId = getUShort(table, record + 6);
+            final int length = getUShort(table, record + 8);
+            final int offset = stringOffset + getUShort(table, record + 10);
+
+            if (nameId >= names.length || offset + length > table.length) {
+                continue;
+            }
+
+            final int score;
+            final Charset charset;
+            if (platformId == 3) {
+                score = languageId == 0x0409 ? 4 : 3;
+                charset = UTF_16BE;
+            } else if (platformId == 0) {
+                score = 2;
+                charset = UTF_16BE;
+            } else if (platformId == 1 && getUShort(table, record + 2) == 0) {
+                score = languageId == 0 ? 1 : 0;
+                charset = ISO_8859_1;
+            } else {
+                continue;
+            }
+
+            if (score > scores[nameId] || names[nameId] == null) {
+                scores[nameId] = score;
+                names[nameId] = new String(table, offset, length, charset).trim();
+            }
+        }
+    }
+
+    @Nullable
+    private List<Face> readIndex(@Nonnull final String version) {
+        final File file = getFile();
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !version.equals(in.readUTF())) {
+                return null;
+            }
+            final int count = in.readInt();
+            final ArrayList<Face> faces = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                faces.add(new Face(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(),
+                        in.readInt(), in.readBoolean()));
+            }
+            return faces;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read the fonts index.", e);
+            return null;
+        } finally {
+            RNTextSizeDiskCache.close(in);
+        }
+    }
+
+    private void writeIndex(@Nonnull final String version, @Nonnull final List<Face> faces) {
+        final File file = getFile();
+        final File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(version);
+            out.writeInt(faces.size());
+            for (Face face : faces) {
+                out.writeUTF(face.fontFamily);
+                out.writeUTF(face.family);
+                out.writeUTF(face.subfamily);
+                out.writeUTF(face.fullName);
+                out.writeInt(face.weight);
+                out.writeBoolean(face.italic);
+            }
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write the fonts index.", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } finally {
+            RNTextSizeDiskCache.close(out);
+        }
+    }
+
+    @Nonnull
+    private File getFile() {
+        return new File(mContext.getCacheDir(), FILE_NAME);
+    }
+
+    @Nonnull
+    private static String firstOf(
+            @Nullable final String a,
+            @Nullable final String b,
+            @Nonnull final String c
+    ) {
+        return a != null && !a.isEmpty() ? a : b != null && !b.isEmpty() ? b : c;
+    }
+
+    private static int getUShort(@Nonnull final byte[] bytes, final int offset) {
+        return offset + 1 < bytes.length
+                ? (bytes[offset] & 0xFF) << 8 | bytes[offset + 1] & 0xFF : 0;
+    }
+
+    /**
+     * Big-endian reader that only goes forward, keeping the position in the font.
+     */
+    private static final class FontReader {
+        private final DataInputStream mIn;
+        private long mPosition;
+
+        FontReader(@Nonnull final InputStream in) {
+            mIn = new DataInputStream(in);
+        }
+
+        int readInt() throws IOException {
+            mPosition += 4;
+            return mIn.readInt();
+        }
+
+        int readUShort() throws IOException {
+            mPosition += 2;
+            return mIn.readUnsignedShort();
+        }
+
+        @Nonnull
+        byte[] readTable(final int offset, final int length) throws IOException {
+            if (length < 0 || length > MAX_TABLE_LENGTH) {
+                throw new IOException("Invalid table length: " + length);
+            }
+            skipTo(offset & 0xFFFFFFFFL);
+
+            final byte[] bytes = new byte[length];
+            mIn.readFully(bytes);
+            mPosition += length;
+            return bytes;
+        }
+
+        void skipTo(final long position) throws IOException {
+            if (position < mPosition) {
+                throw new IOException("Tables out of order");
+            }
+            while (mPosition < position) {
+                final long skipped = mIn.skip(position - mPosition);
+                if (skipped <= 0) {
+                    throw new EOFException();
+                }
+                mPosition += skipped;
+            }
+        }
+    }
+}
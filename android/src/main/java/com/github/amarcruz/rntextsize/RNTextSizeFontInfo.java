@@ -0,0 +1,87 @@
+package com.github.amarcruz.rntextsize;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable result of `fontFromSpecs`, in DIP. The metrics depend only on the
+ * typeface and the size in pixels, so it can be cached and shared by any specs
+ * that resolve to the same font.
+ */
+final class RNTextSizeFontInfo {
+
+    @Nullable final String fontFamily;
+    final boolean bold;
+    final boolean italic;
+    final float fontSize;
+    final float leading;
+    final float ascender;
+    final float descender;
+    final float top;
+    final float bottom;
+    final float lineHeight;
+    final int hash;
+
+    /**
+     * @param textPaint Paint with the typeface and the size already set
+     */
+    RNTextSizeFontInfo(
+            @Nullable final String fontFamily,
+            @Nonnull final Typeface typeface,
+            @Nonnull final TextPaint textPaint,
+            final float density
+    ) {
+        // Info is always in unscaled values
+        final Paint.FontMetrics metrics = new Paint.FontMetrics();
+        final float _lineHeight = textPaint.getFontMetrics(metrics);
+
+        this.fontFamily = fontFamily;
+        bold = typeface.isBold();
+        italic = typeface.isItalic();
+        fontSize = textPaint.getTextSize() / density;
+        leading = metrics.leading / density;
+        ascender = metrics.ascent / density;
+        descender = metrics.descent / density;
+        top = metrics.top / density;
+        bottom = metrics.bottom / density;
+        lineHeight = _lineHeight / density;
+        hash = typeface.hashCode();
+    }
+
+    /**
+     * Key of the info for the given family name, typeface and size in pixels.
+     */
+    @Nonnull
+    static String makeKey(
+            @Nullable final String fontFamily,
+            @Nonnull final Typeface typeface,
+            final float fontSize,
+            final float density
+    ) {
+        return fontFamily + '|' + typeface.hashCode() + '|' + fontSize + '|' + density;
+    }
+
+    @Nonnull
+    WritableMap toMap() {
+        final WritableMap info = Arguments.createMap();
+        info.putString("fontFamily", fontFamily);
+        info.putString("fontWeight", bold ? "bold" : "normal");
+        info.putString("fontStyle", italic ? "italic" : "normal");
+        info.putDouble("fontSize", fontSize);
+        info.putDouble("leading", leading);
+        info.putDouble("ascender", ascender);
+        info.putDouble("descender", descender);
+        info.putDouble("top", top);
+        info.putDouble("bottom", bottom);
+        info.putDouble("lineHeight", lineHeight);
+        info.putInt("_hash", hash);
+        return info;
+    }
+}
@@ -1,17 +1,21 @@
 package com.github.amarcruz.rntextsize;
 
-import android.content.res.AssetManager;
 import android.graphics.Paint;
 import android.graphics.Typeface;
 import android.os.Build;
 import android.text.BoringLayout;
 import android.text.Layout;
-import android.text.SpannableString;
 import android.text.SpannableStringBuilder;
 import android.text.StaticLayout;
 import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JSApplicationIllegalArgumentException;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
@@ -21,35 +25,104 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableType;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facebook.react.uimanager.DisplayMetricsHolder;
 
-import java.io.IOException;
+import java.text.BreakIterator;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-class RNTextSizeModule extends ReactContextBaseJavaModule {
+class RNTextSizeModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
     private static final String TAG = "RNTextSize";
     private static final float SPACING_ADDITION = 0f;
     private static final float SPACING_MULTIPLIER = 1f;
 
+    // flatHeights splits arrays with this or more elements in chunks measured in parallel
+    private static final int PARALLEL_THRESHOLD = 1000;
+    private static final int MIN_CHUNK_SIZE = 250;
+
+    // Default number of heights in each event of flatHeightsStream
+    private static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private static final String EVENT_HEIGHTS = "RNTextSizeHeights";
+    private static final String EVENT_WARM_UP = "RNTextSizeWarmUp";
+
+    // Names of the methods in the stats
+    private static final String STATS_MEASURE = "measure";
+    private static final String STATS_FLAT_HEIGHTS = "flatHeights";
+    private static final String STATS_FONT_FROM_SPECS = "fontFromSpecs";
+
+    // Max number of compiled styles to keep
+    private static final int MAX_STYLES = 64;
+
+    // Paragraphs not in the cache needed to split the measurement of a text in chunks
+    private static final int MIN_PARAGRAPHS_CHUNK = 16;
+
+    // Max memory used by the cache of paragraphs
+    private static final int MAX_PARAGRAPHS_SIZE = 1024 * 1024;
+
+    // Max number of font infos to keep
+    private static final int MAX_FONT_INFOS = 128;
+
+    // Max number of open sessions, the least recently used is closed
+    private static final int MAX_SESSIONS = 16;
+
     private static final String E_MISSING_TEXT = "E_MISSING_TEXT";
     private static final String E_MISSING_PARAMETER = "E_MISSING_PARAMETER";
     private static final String E_UNKNOWN_ERROR = "E_UNKNOWN_ERROR";
-
-    // It's important to pass the ANTI_ALIAS_FLAG flag to the constructor rather than setting it
-    // later by calling setFlags. This is because the latter approach triggers a bug on Android 4.4.2.
-    // The bug is that unicode emoticons aren't measured properly which causes text to be clipped.
-    private static final TextPaint sTextPaintInstance = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private static final String E_CANCELLED = "E_CANCELLED";
+    private static final String E_UNKNOWN_STYLE = "E_UNKNOWN_STYLE";
+    private static final String E_UNKNOWN_SESSION = "E_UNKNOWN_SESSION";
+    private static final String E_INVALID_PARAMETER = "E_INVALID_PARAMETER";
 
     private final ReactApplicationContext mReactContext;
-
-    RNTextSizeModule(ReactApplicationContext reactContext) {
+    private final RNTextSizeStats mStats = new RNTextSizeStats();
+    private final RNTextSizeCache mMeasureCache = new RNTextSizeCache();
+    private final LruCache<String, RNTextSizeStyle> mStyles = new LruCache<>(MAX_STYLES);
+    private final LruCache<String, RNTextSizeParagraph> mParagraphCache =
+            new LruCache<String, RNTextSizeParagraph>(MAX_PARAGRAPHS_SIZE) {
+                @Override
+                protected int sizeOf(final String key, final RNTextSizeParagraph value) {
+                    return key.length() * 2 + 64 + RNTextSizeParagraph.sizeOf();
+                }
+            };
+    private final LruCache<String, RNTextSizeEstimator> mEstimators = new LruCache<>(MAX_STYLES);
+    private final LruCache<String, RNTextSizeFontInfo> mFontInfos = new LruCache<>(MAX_FONT_INFOS);
+    private final ConcurrentHashMap<Integer, RNTextSizeStyle> mRegisteredStyles = new ConcurrentHashMap<>();
+    private final AtomicInteger mNextStyleId = new AtomicInteger();
+    private final LruCache<Integer, RNTextSizeSession> mSessions = new LruCache<>(MAX_SESSIONS);
+    private final AtomicInteger mNextSessionId = new AtomicInteger();
+    private final RNTextSizePrecomputed mPrecomputed =
+            RNTextSizePrecomputed.isSupported() ? new RNTextSizePrecomputed() : null;
+    private final RNTextSizeExecutor mExecutor;
+    private final RNTextSizeDiskCache mDiskCache;
+    private final RNTextSizeFontCatalog mFontCatalog;
+
+    private final List<String> mPreloadFamilies;
+    @Nullable private final String mWarmUpAsset;
+    @Nullable private volatile RNTextSizeWarmUp mWarmUpReport;
+
+    RNTextSizeModule(
+            ReactApplicationContext reactContext,
+            int poolSize,
+            @Nonnull List<String> preloadFamilies,
+            boolean diskCache,
+            @Nullable String warmUpAsset
+    ) {
         super(reactContext);
         mReactContext = reactContext;
+        mExecutor = new RNTextSizeExecutor(poolSize);
+        mPreloadFamilies = preloadFamilies;
+        mWarmUpAsset = warmUpAsset;
+        mDiskCache = diskCache ? new RNTextSizeDiskCache(reactContext) : null;
+        mFontCatalog = new RNTextSizeFontCatalog(reactContext);
     }
 
     @Override
@@ -57,12 +130,70 @@ class RNTextSizeModule extends ReactContextBaseJavaModule {
         return TAG;
     }
 
+    @Override
+    public void initialize() {
+        // The disk cache goes first, until loaded all the lookups are misses
+        if (mDiskCache != null) {
+            mReactContext.addLifecycleEventListener(this);
+            mExecutor.background(new Runnable() {
+                @Override
+                public void run() {
+                    mDiskCache.load();
+                }
+            });
+        }
+        if (!mPreloadFamilies.isEmpty()) {
+            preloadFonts(mPreloadFamilies);
+        }
+        mExecutor.background(new Runnable() {
+            @Override
+            public void run() {
+                mFontCatalog.getAssetNames();
+            }
+        });
+        if (mWarmUpAsset != null) {
+            mExecutor.background(new Runnable() {
+                @Override
+                public void run() {
+                    warmUpAsset(mWarmUpAsset);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onCatalystInstanceDestroy() {
+        mExecutor.shutdown();
+        mSessions.evictAll();
+        if (mDiskCache != null) {
+            mReactContext.removeLifecycleEventListener(this);
+            mDiskCache.flush();
+        }
+    }
+
+    @Override
+    public void onHostResume() {
+    }
+
+    @Override
+    public void onHostPause() {
+        // The App may be killed in background, save the new measurements
+        flushDiskCache();
+    }
+
+    @Override
+    public void onHostDestroy() {
+    }
+
     /**
      * Based on ReactTextShadowNode.java
      */
     @SuppressWarnings("unused")
     @ReactMethod
     public void measure(@Nullable final ReadableMap specs, final Promise promise) {
+        final long start = mStats.start();
+        final long allocs = mStats.startAllocs();
+        final long[] times = new long[RNTextSizeStats.SLOTS];
         final RNTextSizeConf conf = getConf(specs, promise, true);
         if (conf == null) {
             return;
@@ -73,187 +204,401 @@ class RNTextSizeModule extends ReactContextBaseJavaModule {
             promise.reject(E_MISSING_TEXT, "Missing required text.");
             return;
         }
+        final String error = conf.splitParagraphs ? checkParagraphOptions(conf) : null;
+        if (error != null) {
+            promise.reject(E_INVALID_PARAMETER, error);
+            return;
+        }
+        mStats.add(times, RNTextSizeStats.CONF, start);
+        mStats.addAllocs(times, allocs);
+
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, 1, new Runnable() {
+            @Override
+            public void run() {
+                if (task.isCancelled()) {
+                    promise.reject(E_CANCELLED, "Request cancelled.");
+                    return;
+                }
+                RNTextSizeStats.beginSection("RNTextSize.measure");
+                final long allocs = mStats.startAllocs();
+                try {
+                    final WritableMap map;
+                    if (conf.linesInfo) {
+                        map = measureLines(conf, _text, times);
+                    } else {
+                        final RNTextSizeResult result = measureText(conf, _text, true, null, times);
+                        final long marshal = mStats.start();
+                        map = result.toMap();
+                        mStats.add(times, RNTextSizeStats.MARSHAL, marshal);
+                    }
+                    mStats.addAllocs(times, allocs);
+
+                    promise.resolve(map);
+                    mStats.add(times, RNTextSizeStats.TOTAL, start);
+                    mStats.recordTimes(STATS_MEASURE, times);
+                } catch (Exception e) {
+                    promise.reject(E_UNKNOWN_ERROR, e);
+                } finally {
+                    RNTextSizeStats.endSection();
+                }
+            }
+        });
+    }
 
-        final float density = getCurrentDensity();
-        final float width = conf.getWidth(density);
-        final boolean includeFontPadding = conf.includeFontPadding;
+    /**
+     * Synchronous version of `measure`, for use in render or `getItemLayout`.
+     * It runs in the JS thread, so keep the text short.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap measureSync(@Nullable final ReadableMap specs) {
+        if (specs == null) {
+            throw new JSApplicationIllegalArgumentException("Missing parameter object.");
+        }
+        final RNTextSizeConf conf = makeConf(specs, true);
 
-        final WritableMap result = Arguments.createMap();
-        if (_text.isEmpty()) {
-            result.putInt("width", 0);
-            result.putDouble("height", minimalHeight(density, includeFontPadding));
-            result.putInt("lastLineWidth", 0);
-            result.putInt("lineCount", 0);
-            promise.resolve(result);
+        final String _text = conf.getString("text");
+        if (_text == null) {
+            throw new JSApplicationIllegalArgumentException("Missing required text.");
+        }
+        final String error = conf.splitParagraphs ? checkParagraphOptions(conf) : null;
+        if (error != null) {
+            throw new JSApplicationIllegalArgumentException(error);
+        }
+
+        return conf.linesInfo
+                ? measureLines(conf, _text, null) : measureText(conf, _text, true).toMap();
+    }
+
+    /**
+     * Measures rich text given by an array of `{ text, ...fontSpecs }` fragments in one
+     * layout, with the font of each fragment applied through spans. The fragments inherit
+     * the font properties of the specs. Resolves to the same result as `measure`.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void measureFragments(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
             return;
         }
 
-        final SpannableString text = (SpannableString) RNTextSizeSpannedText
-                .spannedFromSpecsAndText(mReactContext, conf, new SpannableString(_text));
+        final ReadableArray fragments = conf.getArray("fragments");
+        if (fragments == null) {
+            promise.reject(E_MISSING_PARAMETER, "Missing required fragments, must be an array.");
+            return;
+        }
 
-        final TextPaint textPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
-        Layout layout = null;
+        // Read the fragments here, the ReadableArray cannot be used in other threads
+        final ArrayList<String> texts = new ArrayList<>(fragments.size());
+        final ArrayList<RNTextSizeConf> confs = new ArrayList<>(fragments.size());
         try {
-            final BoringLayout.Metrics boring = BoringLayout.isBoring(text, textPaint);
-            int hintWidth = (int) width;
-
-            if (boring == null) {
-                // Not boring, ie. the text is multiline or contains unicode characters.
-                final float desiredWidth = Layout.getDesiredWidth(text, textPaint);
-                if (desiredWidth <= width) {
-                    hintWidth = (int) Math.ceil(desiredWidth);
-                }
-            } else if (boring.width <= width) {
-                // Single-line and width unknown or bigger than the width of the text.
-                layout = BoringLayout.make(
-                        text,
-                        textPaint,
-                        boring.width,
-                        Layout.Alignment.ALIGN_NORMAL,
-                        SPACING_MULTIPLIER,
-                        SPACING_ADDITION,
-                        boring,
-                        includeFontPadding);
-            }
-
-            if (layout == null) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    layout = StaticLayout.Builder.obtain(text, 0, text.length(), textPaint, hintWidth)
-                            .setAlignment(Layout.Alignment.ALIGN_NORMAL)
-                            .setBreakStrategy(conf.getTextBreakStrategy())
-                            .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NORMAL)
-                            .setIncludePad(includeFontPadding)
-                            .setLineSpacing(SPACING_ADDITION, SPACING_MULTIPLIER)
-                            .build();
-                } else {
-                    layout = new StaticLayout(
-                            text,
-                            textPaint,
-                            hintWidth,
-                            Layout.Alignment.ALIGN_NORMAL,
-                            SPACING_MULTIPLIER,
-                            SPACING_ADDITION,
-                            includeFontPadding
-                    );
-                }
-            }
-
-            final int lineCount = layout.getLineCount();
-            float rectWidth;
-
-            if (conf.getBooleanOrTrue("usePreciseWidth")) {
-                float lastWidth = 0f;
-                // Layout.getWidth() returns the configured max width, we must
-                // go slow to get the used one (and with the text trimmed).
-                rectWidth = 0f;
-                for (int i = 0; i < lineCount; i++) {
-                    lastWidth = layout.getLineMax(i);
-                    if (lastWidth > rectWidth) {
-                        rectWidth = lastWidth;
-                    }
+            for (int ix = 0; ix < fragments.size(); ix++) {
+                if (fragments.getType(ix) != ReadableType.Map) {
+                    promise.reject(E_INVALID_PARAMETER, "The fragment at " + ix + " must be an object.");
+                    return;
+                }
+                final ReadableMap fragment = fragments.getMap(ix);
+                if (!fragment.hasKey("text") || fragment.getType("text") != ReadableType.String) {
+                    promise.reject(E_INVALID_PARAMETER, "The fragment at " + ix + " requires a string text.");
+                    return;
+                }
+                texts.add(fragment.getString("text"));
+                confs.add(new RNTextSizeConf(fragment, conf.getBase()));
+            }
+        } catch (Exception e) {
+            promise.reject(E_INVALID_PARAMETER, e.getMessage());
+            return;
+        }
+
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, 1, new Runnable() {
+            @Override
+            public void run() {
+                if (task.isCancelled()) {
+                    promise.reject(E_CANCELLED, "Request cancelled.");
+                    return;
+                }
+                RNTextSizeStats.beginSection("RNTextSize.measureFragments");
+                try {
+                    promise.resolve(measureFragments(conf, texts, confs).toMap());
+                } catch (Exception e) {
+                    promise.reject(E_UNKNOWN_ERROR, e);
+                } finally {
+                    RNTextSizeStats.endSection();
                 }
-                result.putDouble("lastLineWidth", lastWidth / density);
-            } else {
-                rectWidth = layout.getWidth();
             }
+        });
+    }
+
+    /**
+     * Finds the largest font size in the range [minFontSize, maxFontSize] with which
+     * the text fits in the box given by `width`, `height` and `numberOfLines`, without
+     * breaking words. One of `height` or `numberOfLines` is required.
+     * The search is done with one TextPaint, only the size changes in each probe.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void fitFontSize(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
 
-            result.putDouble("width", Math.min(rectWidth / density, width));
-            result.putDouble("height", layout.getHeight() / density);
-            result.putInt("lineCount", lineCount);
+        final String _text = conf.getString("text");
+        if (_text == null) {
+            promise.reject(E_MISSING_TEXT, "Missing required text.");
+            return;
+        }
+        if (!checkFitOptions(conf, promise)) {
+            return;
+        }
 
-            Integer lineInfoForLine = conf.getIntOrNull("lineInfoForLine");
-            if (lineInfoForLine != null && lineInfoForLine >= 0) {
-                final int line = Math.min(lineInfoForLine, lineCount);
-                final WritableMap info = Arguments.createMap();
-                info.putInt("line", line);
-                info.putInt("start", layout.getLineStart(line));
-                info.putInt("end", layout.getLineVisibleEnd(line));
-                info.putDouble("bottom", layout.getLineBottom(line) / density);
-                info.putDouble("width", layout.getLineMax(line) / density);
-                result.putMap("lineInfo", info);
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, 1, new Runnable() {
+            @Override
+            public void run() {
+                flatFitFontSize(conf, new String[]{_text}, task, promise, true);
             }
+        });
+    }
 
-            promise.resolve(result);
-        } catch (Exception e) {
-            promise.reject(E_UNKNOWN_ERROR, e);
+    /**
+     * Batch version of `fitFontSize`, the `text` option is an array of strings.
+     * Resolves to an array with the font size for each text.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void flatFitFontSize(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
+
+        final String[] texts = toStringArray(conf.getArray("text"));
+        if (texts == null) {
+            promise.reject(E_MISSING_TEXT, "Missing required text, must be an array.");
+            return;
+        }
+        if (!checkFitOptions(conf, promise)) {
+            return;
         }
+
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, texts.length, new Runnable() {
+            @Override
+            public void run() {
+                flatFitFontSize(conf, texts, task, promise, false);
+            }
+        });
     }
 
     // https://stackoverflow.com/questions/3654321/measuring-text-height-to-be-drawn-on-canvas-android
     @SuppressWarnings("unused")
     @ReactMethod
     public void flatHeights(@Nullable final ReadableMap specs, final Promise promise) {
+        final long start = mStats.start();
+        final long allocs = mStats.startAllocs();
+        final long[] times = new long[RNTextSizeStats.SLOTS];
         final RNTextSizeConf conf = getConf(specs, promise, true);
         if (conf == null) {
             return;
         }
 
-        final ReadableArray texts = conf.getArray("text");
+        final String[] texts = toStringArray(conf.getArray("text"));
         if (texts == null) {
             promise.reject(E_MISSING_TEXT, "Missing required text, must be an array.");
             return;
         }
+        mStats.add(times, RNTextSizeStats.CONF, start);
+        mStats.addAllocs(times, allocs);
+
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, texts.length, new Runnable() {
+            @Override
+            public void run() {
+                RNTextSizeStats.beginSection("RNTextSize.flatHeights");
+                try {
+                    if (flatHeights(conf, texts, task, promise, times)) {
+                        mStats.add(times, RNTextSizeStats.TOTAL, start);
+                        mStats.recordTimes(STATS_FLAT_HEIGHTS, times);
+                    }
+                } finally {
+                    RNTextSizeStats.endSection();
+                }
+            }
+        });
+    }
 
-        final float density = getCurrentDensity();
-        final float width = conf.getWidth(density);
-        final boolean includeFontPadding = conf.includeFontPadding;
-        final int textBreakStrategy = conf.getTextBreakStrategy();
+    /**
+     * Like `flatHeights`, but the height of the texts with only Latin characters is
+     * estimated with a greedy word wrap, without StaticLayout. Resolves to
+     * `{ heights, estimated }`, where `estimated` flags the approximate heights.
+     * The `binary` option is not supported.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void flatHeightsEstimate(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
+        if (conf.binary) {
+            promise.reject(E_INVALID_PARAMETER, "flatHeightsEstimate does not support the binary option.");
+            return;
+        }
 
-        final WritableArray result = Arguments.createArray();
+        final String[] texts = toStringArray(conf.getArray("text"));
+        if (texts == null) {
+            promise.reject(E_MISSING_TEXT, "Missing required text, must be an array.");
+            return;
+        }
 
-        final SpannableStringBuilder sb = new SpannableStringBuilder(" ");
-        RNTextSizeSpannedText.spannedFromSpecsAndText(mReactContext, conf, sb);
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, texts.length, new Runnable() {
+            @Override
+            public void run() {
+                RNTextSizeStats.beginSection("RNTextSize.flatHeightsEstimate");
+                try {
+                    flatHeightsEstimate(conf, texts, task, promise);
+                } finally {
+                    RNTextSizeStats.endSection();
+                }
+            }
+        });
+    }
 
-        final TextPaint textPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
-        Layout layout;
-        try {
+    /**
+     * Like `flatHeights`, but the heights are sent in chunks through the "RNTextSizeHeights"
+     * event as soon as they are available, so JS can use the first ones while the rest
+     * are being measured. The `requestId` option is required to identify the events.
+     * Resolves to the number of measured texts after the last chunk is sent.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void flatHeightsStream(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
 
-            for (int ix = 0; ix < texts.size(); ix++) {
+        final String requestId = conf.getString("requestId");
+        if (requestId == null) {
+            promise.reject(E_MISSING_PARAMETER, "Missing required requestId.");
+            return;
+        }
 
-                // If this element is `null` or another type, return zero
-                if (texts.getType(ix) != ReadableType.String) {
-                    result.pushInt(0);
-                    continue;
-                }
+        final String[] texts = toStringArray(conf.getArray("text"));
+        if (texts == null) {
+            promise.reject(E_MISSING_TEXT, "Missing required text, must be an array.");
+            return;
+        }
 
-                final String text = texts.getString(ix);
+        final Integer _chunkSize = conf.getIntOrNull("chunkSize");
+        final int chunkSize = _chunkSize != null && _chunkSize > 0 ? _chunkSize : DEFAULT_CHUNK_SIZE;
+        final RNTextSizeExecutor.Task task = mExecutor.start(requestId, promise);
 
-                // If empty, return the minimum height of <Text> components
-                if (text.isEmpty()) {
-                    result.pushDouble(minimalHeight(density, includeFontPadding));
-                    continue;
+        mExecutor.execute(task, texts.length, new Runnable() {
+            @Override
+            public void run() {
+                RNTextSizeStats.beginSection("RNTextSize.flatHeightsStream");
+                try {
+                    flatHeightsStream(conf, texts, chunkSize, task, promise);
+                } finally {
+                    RNTextSizeStats.endSection();
                 }
+            }
+        });
+    }
 
-                // Reset the SB text, the attrs will expand to its full length
-                sb.replace(0, sb.length(), text);
+    /**
+     * Required by NativeEventEmitter, the events are sent only to the request
+     * that started them.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void addListener(final String eventName) {
+    }
 
-                if (Build.VERSION.SDK_INT >= 23) {
-                    layout = StaticLayout.Builder.obtain(sb, 0, sb.length(), textPaint, (int) width)
-                            .setAlignment(Layout.Alignment.ALIGN_NORMAL)
-                            .setBreakStrategy(textBreakStrategy)
-                            .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NORMAL)
-                            .setIncludePad(includeFontPadding)
-                            .setLineSpacing(SPACING_ADDITION, SPACING_MULTIPLIER)
-                            .build();
-                } else {
-                    layout = new StaticLayout(
-                            sb,
-                            textPaint,
-                            (int) width,
-                            Layout.Alignment.ALIGN_NORMAL,
-                            SPACING_MULTIPLIER,
-                            SPACING_ADDITION,
-                            includeFontPadding
-                    );
-                }
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void removeListeners(final int count) {
+    }
+
+    /**
+     * Like `flatHeights`, but returns the full metrics of each text in packed arrays
+     * `{ width, height, lastLineWidth, lineCount }`, all with the same length as `text`.
+     * An optional `widths` array overrides the width for the text in the same position.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void flatMeasure(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
+
+        final String[] texts = toStringArray(conf.getArray("text"));
+        if (texts == null) {
+            promise.reject(E_MISSING_TEXT, "Missing required text, must be an array.");
+            return;
+        }
 
-                result.pushDouble(layout.getHeight() / density);
+        final float[] widths = toFloatArray(conf.getArray("widths"), texts.length);
+
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, texts.length, new Runnable() {
+            @Override
+            public void run() {
+                flatMeasure(conf, texts, widths, task, promise);
             }
+        });
+    }
 
-            promise.resolve(result);
-        } catch (Exception e) {
-            promise.reject(E_UNKNOWN_ERROR, e);
+    /**
+     * Measures one text at several widths, the text is shaped only once.
+     * Returns the packed arrays `{ width, height, lineCount }` with the same length
+     * as the `widths` option.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void measureWidths(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
+
+        final String _text = conf.getString("text");
+        if (_text == null) {
+            promise.reject(E_MISSING_TEXT, "Missing required text.");
+            return;
         }
+
+        final ReadableArray _widths = conf.getArray("widths");
+        if (_widths == null) {
+            promise.reject(E_MISSING_PARAMETER, "Missing required widths, must be an array.");
+            return;
+        }
+        final float[] widths = toFloatArray(_widths, _widths.size());
+
+        final RNTextSizeExecutor.Task task = mExecutor.start(conf.getString("requestId"), promise);
+        mExecutor.execute(task, widths.length, new Runnable() {
+            @Override
+            public void run() {
+                measureWidths(conf, _text, widths, task, promise);
+            }
+        });
+    }
+
+    /**
+     * Cancels the pending or running request with the given `requestId`, its promise
+     * will be rejected with E_CANCELLED. Resolves to `true` if the request was found.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void cancel(@Nullable final String requestId, final Promise promise) {
+        promise.resolve(requestId != null && mExecutor.cancel(requestId));
     }
 
     /**
@@ -288,19 +633,59 @@ class RNTextSizeModule extends ReactContextBaseJavaModule {
     @SuppressWarnings("unused")
     @ReactMethod
     public void fontFromSpecs(@Nullable final ReadableMap specs, final Promise promise) {
+        final long start = mStats.start();
+        final long allocs = mStats.startAllocs();
+        final long[] times = new long[RNTextSizeStats.SLOTS];
         final RNTextSizeConf conf = getConf(specs, promise);
         if (conf == null) {
             return;
         }
-        final Typeface typeface = RNTextSizeConf.getFont(mReactContext, conf.fontFamily, conf.fontStyle);
-        final TextPaint textPaint = sTextPaintInstance;
-        final int fontSize = (int) Math.ceil(conf.scale(conf.fontSize));
+        mStats.add(times, RNTextSizeStats.CONF, start);
 
-        textPaint.reset();
-        textPaint.setTypeface(typeface);
-        textPaint.setTextSize(fontSize);
+        final RNTextSizeFontInfo info = fontFromSpecs(conf, times);
+        final long marshal = mStats.start();
+        final WritableMap map = info.toMap();
+        mStats.add(times, RNTextSizeStats.MARSHAL, marshal);
+        mStats.addAllocs(times, allocs);
+
+        promise.resolve(map);
+        mStats.add(times, RNTextSizeStats.TOTAL, start);
+        mStats.recordTimes(STATS_FONT_FROM_SPECS, times);
+    }
+
+    /**
+     * Batch version of `fontFromSpecs`, resolves to an array with the font info of
+     * each specs, or `null` for elements that are not objects.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void fontsFromSpecs(@Nullable final ReadableArray specsArray, final Promise promise) {
+        if (specsArray == null) {
+            promise.reject(E_MISSING_PARAMETER, "Missing required array of specs.");
+            return;
+        }
 
-        promise.resolve(fontInfoFromTypeface(textPaint, typeface, conf));
+        final WritableArray result = Arguments.createArray();
+        try {
+            for (int ix = 0; ix < specsArray.size(); ix++) {
+                if (specsArray.getType(ix) != ReadableType.Map) {
+                    result.pushNull();
+                    continue;
+                }
+                final ReadableMap specs = specsArray.getMap(ix);
+                final Integer styleId = getStyleId(specs);
+                if (styleId != null && !mRegisteredStyles.containsKey(styleId)) {
+                    promise.reject(E_UNKNOWN_STYLE, "Unknown styleId: " + styleId);
+                    return;
+                }
+                result.pushMap(fontFromSpecs(makeConf(specs, false), null).toMap());
+            }
+            promise.resolve(result);
+        } catch (JSApplicationIllegalArgumentException e) {
+            promise.reject(E_INVALID_PARAMETER, e.getMessage());
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+        }
     }
 
     @SuppressWarnings("unused")
@@ -330,37 +715,1629 @@ class RNTextSizeModule extends ReactContextBaseJavaModule {
             names.pushString("cursive");
         }
 
-        getFontsInAssets(names);
+        // The catalog is loaded at startup, the first call may wait for it
+        for (String name : mFontCatalog.getAssetNames()) {
+            names.pushString(name);
+        }
         promise.resolve(names);
     }
 
     /**
-     * Android does not have font name info.
+     * Returns the names of the fonts in assets for the family, by the family name
+     * in the font files or the name of any of its assets, or `null` if the family
+     * is not in assets. The names can be used as `fontFamily`.
      */
     @SuppressWarnings("unused")
     @ReactMethod
-    public void fontNamesForFamilyName(final String ignored, final Promise promise) {
-        promise.resolve(null);
+    public void fontNamesForFamilyName(@Nullable final String familyName, final Promise promise) {
+        if (familyName == null) {
+            promise.resolve(null);
+            return;
+        }
+        final List<RNTextSizeFontCatalog.Face> faces = mFontCatalog.getFaces(familyName);
+        promise.resolve(faces != null ? RNTextSizeFontCatalog.toNames(faces) : null);
     }
 
-    // ============================================================================
-    //
-    //      Non-exposed instance & static methods
-    //
-    // ============================================================================
-
+    /**
+     * Like `fontNamesForFamilyName`, but returns the names, weight and style of
+     * each face, as read from the font files.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void fontFacesForFamilyName(@Nullable final String familyName, final Promise promise) {
+        if (familyName == null) {
+            promise.resolve(null);
+            return;
+        }
+        final List<RNTextSizeFontCatalog.Face> faces = mFontCatalog.getFaces(familyName);
+        promise.resolve(faces != null ? RNTextSizeFontCatalog.toMaps(faces) : null);
+    }
+
+    /**
+     * Returns the counters of the `measure` cache.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void getCacheStats(final Promise promise) {
+        final WritableMap stats = mMeasureCache.getStats();
+        stats.putMap("typefaces", RNTextSizeConf.getTypefaceStats());
+        if (mDiskCache != null) {
+            stats.putMap("disk", mDiskCache.getStats());
+        }
+        promise.resolve(stats);
+    }
+
+    /**
+     * Enables or disables the collection of timing metrics, see `getStats`.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void setStatsEnabled(final boolean enabled, final Promise promise) {
+        mStats.setEnabled(enabled);
+        promise.resolve(null);
+    }
+
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void getStats(final Promise promise) {
+        promise.resolve(mStats.toMap());
+    }
+
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void resetStats(final Promise promise) {
+        mStats.reset();
+        promise.resolve(null);
+    }
+
+    /**
+     * Parses the specs and compiles its style once, the resolved ID can be used as
+     * the `styleId` option of the measurement functions instead of the font specs.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void registerStyle(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
+
+        try {
+            final int styleId = mNextStyleId.incrementAndGet();
+            mRegisteredStyles.put(styleId, new RNTextSizeStyle(mReactContext, conf.getBase()));
+            promise.resolve(styleId);
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void unregisterStyle(final int styleId, final Promise promise) {
+        promise.resolve(mRegisteredStyles.remove(styleId) != null);
+    }
+
+    /**
+     * Starts a measurement session for a text that will change incrementally, with
+     * the same specs of `measure` except `text`. Resolves to the session ID.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void createSession(@Nullable final ReadableMap specs, final Promise promise) {
+        final RNTextSizeConf conf = getConf(specs, promise, true);
+        if (conf == null) {
+            return;
+        }
+        final String error = checkParagraphOptions(conf);
+        if (error != null) {
+            promise.reject(E_INVALID_PARAMETER, error);
+            return;
+        }
+
+        final int sessionId = mNextSessionId.incrementAndGet();
+        mSessions.put(sessionId, new RNTextSizeSession(conf));
+        promise.resolve(sessionId);
+    }
+
+    /**
+     * Measures the current text of a session, only the paragraphs that are not in
+     * the previous text are laid out. Resolves to the same result of `measure`.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void sessionMeasure(final int sessionId, @Nullable final String text, final Promise promise) {
+        final RNTextSizeSession session = mSessions.get(sessionId);
+        if (session == null) {
+            promise.reject(E_UNKNOWN_SESSION, "Unknown sessionId: " + sessionId);
+            return;
+        }
+        if (text == null) {
+            promise.reject(E_MISSING_TEXT, "Missing required text.");
+            return;
+        }
+
+        final RNTextSizeExecutor.Task task = mExecutor.start(null, promise);
+        mExecutor.execute(task, 1, new Runnable() {
+            @Override
+            public void run() {
+                RNTextSizeStats.beginSection("RNTextSize.sessionMeasure");
+                try {
+                    promise.resolve(measureSession(session, text).toMap());
+                } catch (Exception e) {
+                    promise.reject(E_UNKNOWN_ERROR, e);
+                } finally {
+                    RNTextSizeStats.endSection();
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void closeSession(final int sessionId, final Promise promise) {
+        promise.resolve(mSessions.remove(sessionId) != null);
+    }
+
+    /**
+     * Load the typefaces of the given families in the background, so the first
+     * measurements don't have to wait for them.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void preloadFonts(@Nullable final ReadableArray families, final Promise promise) {
+        final String[] names = toStringArray(families);
+        final List<String> list = new ArrayList<>();
+
+        if (names != null) {
+            for (String name : names) {
+                if (name != null) {
+                    list.add(name);
+                }
+            }
+        }
+        preloadFonts(list);
+        promise.resolve(null);
+    }
+
+    /**
+     * Measures the texts of the manifest in background, to load the typefaces and
+     * fill the caches before they are needed. Resolves to the timing report, that
+     * is also sent by the "RNTextSizeWarmUp" event.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void warmUp(@Nullable final ReadableArray manifest, final Promise promise) {
+        if (manifest == null) {
+            promise.reject(E_MISSING_PARAMETER, "Missing required manifest, must be an array.");
+            return;
+        }
+
+        final List<RNTextSizeConf> confs = new ArrayList<>();
+        final List<String[]> texts = new ArrayList<>();
+        final int errors = readManifest(manifest, confs, texts);
+
+        mExecutor.background(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final RNTextSizeWarmUp report = warmUp("manifest", confs, texts, errors);
+                    emit(EVENT_WARM_UP, report.toMap());
+                    promise.resolve(report.toMap());
+                } catch (Exception e) {
+                    promise.reject(E_UNKNOWN_ERROR, e);
+                }
+            }
+        }, promise);
+    }
+
+    /**
+     * Resolves to the report of the last warm-up, or `null` if there was none.
+     * The warm-up of the asset may end before JS subscribes to its event.
+     */
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void getWarmUpReport(final Promise promise) {
+        final RNTextSizeWarmUp report = mWarmUpReport;
+        promise.resolve(report != null ? report.toMap() : null);
+    }
+
+    @SuppressWarnings("unused")
+    @ReactMethod
+    public void clearCache(final Promise promise) {
+        mMeasureCache.evictAll();
+        mParagraphCache.evictAll();
+        mFontInfos.evictAll();
+        mEstimators.evictAll();
+        if (mDiskCache != null) {
+            mDiskCache.clear();
+        }
+        if (mPrecomputed != null) {
+            mPrecomputed.clear();
+        }
+        promise.resolve(null);
+    }
+
+    // ============================================================================
+    //
+    //      Non-exposed instance & static methods
+    //
+    // ============================================================================
+
+    @Nullable
+    private RNTextSizeConf getConf(final ReadableMap specs, final Promise promise, boolean forText) {
+        if (specs == null) {
+            promise.reject(E_MISSING_PARAMETER, "Missing parameter object.");
+            return null;
+        }
+        try {
+            final Integer styleId = getStyleId(specs);
+            if (styleId != null && !mRegisteredStyles.containsKey(styleId)) {
+                promise.reject(E_UNKNOWN_STYLE, "Unknown styleId: " + styleId);
+                return null;
+            }
+            return makeConf(specs, forText);
+        } catch (RuntimeException e) {
+            promise.reject(E_INVALID_PARAMETER, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Makes the conf for the specs, using the registered style if `styleId` is given.
+     * Null or wrongly typed options are reported as JSApplicationIllegalArgumentException.
+     */
+    @Nonnull
+    private RNTextSizeConf makeConf(@Nonnull final ReadableMap specs, final boolean forText) {
+        final Integer styleId = getStyleId(specs);
+        final RNTextSizeStyle style = styleId != null ? mRegisteredStyles.get(styleId) : null;
+
+        if (styleId != null && style == null) {
+            throw new JSApplicationIllegalArgumentException("Unknown styleId: " + styleId);
+        }
+        try {
+            return style != null
+                    ? new RNTextSizeConf(specs, style.conf, styleId, forText)
+                    : new RNTextSizeConf(specs, forText);
+        } catch (JSApplicationIllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // ReadableNativeMap throws NullPointerException, ClassCastException or
+            // UnexpectedNativeTypeException for null or wrongly typed values
+            throw new JSApplicationIllegalArgumentException("Invalid option: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The `styleId` of the specs, or null if not given.
+     */
+    @Nullable
+    private static Integer getStyleId(@Nonnull final ReadableMap specs) {
+        if (!specs.hasKey("styleId")) {
+            return null;
+        }
+        if (specs.getType("styleId") != ReadableType.Number) {
+            throw new JSApplicationIllegalArgumentException("The styleId must be a number.");
+        }
+        return specs.getInt("styleId");
+    }
+
+    @Nullable
+    private RNTextSizeConf getConf(final ReadableMap specs, final Promise promise) {
+        return getConf(specs, promise, false);
+    }
+
+    /**
+     * @param times Times of the request, the ones of each chunk are added to it
+     * @return `true` if the promise was resolved
+     */
+    private boolean flatHeights(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String[] texts,
+            @Nonnull final RNTextSizeExecutor.Task task,
+            @Nonnull final Promise promise,
+            @Nonnull final long[] times
+    ) {
+        final float[] heights = new float[texts.length];
+
+        try {
+            final int chunks = texts.length >= PARALLEL_THRESHOLD && conf.parallel
+                    ? Math.min(mExecutor.getParallelism(), texts.length / MIN_CHUNK_SIZE) : 1;
+
+            // Each chunk has its own times, these are summed once the chunks are done
+            final long[][] chunkTimes = new long[chunks][RNTextSizeStats.SLOTS];
+
+            if (chunks > 1) {
+                // Each chunk has its own TextPaint, SpannableStringBuilder and spans
+                final Runnable[] jobs = new Runnable[chunks];
+                final int chunkSize = (texts.length + chunks - 1) / chunks;
+
+                for (int i = 0; i < chunks; i++) {
+                    final int start = i * chunkSize;
+                    final int end = Math.min(start + chunkSize, texts.length);
+                    final long[] _times = chunkTimes[i];
+                    jobs[i] = new Runnable() {
+                        @Override
+                        public void run() {
+                            measureHeights(conf, texts, start, end, heights, task, true, _times);
+                        }
+                    };
+                }
+                mExecutor.runParallel(jobs);
+            } else {
+                measureHeights(conf, texts, 0, texts.length, heights, task, true, chunkTimes[0]);
+            }
+            RNTextSizeStats.addChunks(times, chunkTimes);
+
+            if (task.isCancelled()) {
+                promise.reject(E_CANCELLED, "Request cancelled.");
+                return false;
+            }
+
+            final long marshal = mStats.start();
+            final long allocs = mStats.startAllocs();
+            final Object result = conf.binary
+                    ? RNTextSizeBinary.encode(heights) : RNTextSizeBinary.toArray(heights);
+            mStats.add(times, RNTextSizeStats.MARSHAL, marshal);
+            mStats.addAllocs(times, allocs);
+            promise.resolve(result);
+            return true;
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+            return false;
+        }
+    }
+
+    private void flatHeightsStream(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String[] texts,
+            final int chunkSize,
+            @Nonnull final RNTextSizeExecutor.Task task,
+            @Nonnull final Promise promise
+    ) {
+        final float[] heights = new float[texts.length];
+        final boolean binary = conf.binary;
+
+        try {
+            for (int start = 0; start < texts.length; start += chunkSize) {
+                final int end = Math.min(start + chunkSize, texts.length);
+
+                measureHeights(conf, texts, start, end, heights, task, true, null);
+                if (task.isCancelled()) {
+                    promise.reject(E_CANCELLED, "Request cancelled.");
+                    return;
+                }
+
+                final float[] chunk = Arrays.copyOfRange(heights, start, end);
+
+                final WritableMap event = Arguments.createMap();
+                event.putString("requestId", task.requestId);
+                event.putInt("start", start);
+                if (binary) {
+                    event.putString("heights", RNTextSizeBinary.encode(chunk));
+                } else {
+                    event.putArray("heights", RNTextSizeBinary.toArray(chunk));
+                }
+                event.putInt("total", texts.length);
+                event.putDouble("progress", (double) end / texts.length);
+                event.putBoolean("done", end == texts.length);
+                emit(EVENT_HEIGHTS, event);
+            }
+            promise.resolve(texts.length);
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+        }
+    }
+
+    void flatHeightsEstimate(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String[] texts,
+            @Nonnull final RNTextSizeExecutor.Task task,
+            @Nonnull final Promise promise
+    ) {
+        final float density = getCurrentDensity();
+        final float width = conf.getWidth(density);
+
+        try {
+            final RNTextSizeStyle style = getStyle(conf);
+            final boolean includeFontPadding = style.includeFontPadding;
+            final TextPaint textPaint = style.newPaint();
+            final int maxLines = getMaxLines(conf, textPaint, density);
+            final float maxHeight = conf.getMaxHeight(density);
+
+            RNTextSizeEstimator estimator = mEstimators.get(style.key);
+            if (estimator == null) {
+                estimator = new RNTextSizeEstimator(style);
+                mEstimators.put(style.key, estimator);
+            }
+
+            final WritableArray heights = Arguments.createArray();
+            final WritableArray estimated = Arguments.createArray();
+
+            for (String text : texts) {
+                if (task.isCancelled()) {
+                    promise.reject(E_CANCELLED, "Request cancelled.");
+                    return;
+                }
+
+                // Same as flatHeights for `null` and empty elements
+                if (text == null || text.isEmpty()) {
+                    heights.pushDouble(text == null ? 0 : minimalHeight(density, includeFontPadding));
+                    estimated.pushBoolean(false);
+                    continue;
+                }
+
+                int lineCount = estimator.getLineCount(text, width);
+                if (lineCount > 0) {
+                    // Same limits of the exact path, at least one line
+                    lineCount = Math.min(lineCount, maxLines);
+                    while (lineCount > 1 && estimator.getHeight(lineCount) > maxHeight) {
+                        lineCount--;
+                    }
+                    heights.pushDouble(estimator.getHeight(lineCount) / density);
+                    estimated.pushBoolean(true);
+                } else {
+                    final Layout layout = makeStaticLayout(
+                            text, textPaint, (int) width, style.textBreakStrategy, includeFontPadding, maxLines);
+                    lineCount = maxLines == Integer.MAX_VALUE
+                            ? layout.getLineCount() : getVisibleLines(layout, maxLines, maxHeight);
+                    heights.pushDouble(getHeight(layout, lineCount) / density);
+                    estimated.pushBoolean(false);
+                }
+            }
+
+            final WritableMap result = Arguments.createMap();
+            result.putArray("heights", heights);
+            result.putArray("estimated", estimated);
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+        }
+    }
+
+    /**
+     * The fit functions need a positive width and a limit for the height, given
+     * by `height` or `numberOfLines`.
+     *
+     * @return `false` if the promise was rejected
+     */
+    private static boolean checkFitOptions(@Nonnull final RNTextSizeConf conf, @Nonnull final Promise promise) {
+        if (Float.isNaN(conf.width)) {
+            promise.reject(E_MISSING_PARAMETER, "Missing required width.");
+            return false;
+        }
+        if (!(conf.width > 0)) {
+            promise.reject(E_INVALID_PARAMETER, "The width must be greater than zero.");
+            return false;
+        }
+        if (!Float.isNaN(conf.height) && !(conf.height > 0)) {
+            promise.reject(E_INVALID_PARAMETER, "The height must be greater than zero.");
+            return false;
+        }
+        if (Float.isNaN(conf.height) && conf.numberOfLines == Integer.MAX_VALUE) {
+            promise.reject(E_MISSING_PARAMETER, "Missing required height or numberOfLines.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The paragraphs measured alone (`splitParagraphs` and sessions) are composed
+     * without the layout of the whole text, so they cannot clamp the result or
+     * give the info of the lines.
+     *
+     * @return The error message for the unsupported options, or null
+     */
+    @Nullable
+    private static String checkParagraphOptions(@Nonnull final RNTextSizeConf conf) {
+        if (conf.hasLineLimit()) {
+            return "numberOfLines and maxHeight cannot be used with splitParagraphs or sessions.";
+        }
+        if (conf.lineInfoForLine != null && conf.lineInfoForLine >= 0) {
+            return "lineInfoForLine cannot be used with splitParagraphs or sessions.";
+        }
+        if (conf.linesInfo) {
+            return "linesInfo cannot be used with splitParagraphs or sessions.";
+        }
+        return null;
+    }
+
+    /**
+     * Measures the text by paragraphs, reusing the paragraphs of the last text of
+     * the session.
+     */
+    @Nonnull
+    private RNTextSizeResult measureSession(
+            @Nonnull final RNTextSizeSession session,
+            @Nonnull final String text
+    ) {
+        final RNTextSizeConf conf = session.conf;
+        final float density = getCurrentDensity();
+        final float width = conf.getWidth(density);
+
+        if (text.isEmpty()) {
+            return new RNTextSizeResult(0f, (float) minimalHeight(density, conf.includeFontPadding), 0f, 0);
+        }
+
+        synchronized (session) {
+            final RNTextSizeStyle style = getStyle(conf);
+            final String[] paragraphs = text.split("\n", -1);
+            final RNTextSizeParagraph[] infos = new RNTextSizeParagraph[paragraphs.length];
+            TextPaint textPaint = null;
+
+            for (int ix = 0; ix < paragraphs.length; ix++) {
+                RNTextSizeParagraph info = session.get(paragraphs[ix]);
+
+                if (info == null) {
+                    if (textPaint == null) {
+                        textPaint = style.newPaint();
+                    }
+                    info = layoutParagraph(conf, style, textPaint, paragraphs[ix], density, width);
+                }
+                session.put(paragraphs[ix], info);
+                infos[ix] = info;
+            }
+            session.commit();
+
+            return RNTextSizeParagraph.compose(infos, density);
+        }
+    }
+
+    /**
+     * Measures each paragraph of the text alone, the paragraphs are cached and
+     * measured in parallel if there are many of them not in the cache.
+     */
+    @Nonnull
+    RNTextSizeResult measureParagraphs(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String text,
+            final float density,
+            final float width
+    ) {
+        if (text.isEmpty()) {
+            return new RNTextSizeResult(0f, (float) minimalHeight(density, conf.includeFontPadding), 0f, 0);
+        }
+
+        final RNTextSizeStyle style = getStyle(conf);
+        final String[] paragraphs = text.split("\n", -1);
+        final String[] keys = new String[paragraphs.length];
+        final RNTextSizeParagraph[] infos = new RNTextSizeParagraph[paragraphs.length];
+
+        // The key includes the density and the font scale through the scaled sizes
+        final String measureKey = style.key + '|' + conf.getMeasureKey(width);
+        final List<Integer> missing = new ArrayList<>();
+
+        for (int ix = 0; ix < paragraphs.length; ix++) {
+            keys[ix] = RNTextSizeCache.makeKey(measureKey, paragraphs[ix]);
+            infos[ix] = mParagraphCache.get(keys[ix]);
+            if (infos[ix] == null) {
+                missing.add(ix);
+            }
+        }
+
+        final int chunks = Math.min(mExecutor.getParallelism(), missing.size() / MIN_PARAGRAPHS_CHUNK);
+        if (chunks > 1) {
+            final Runnable[] jobs = new Runnable[chunks];
+            final int chunkSize = (missing.size() + chunks - 1) / chunks;
+
+            for (int i = 0; i < chunks; i++) {
+                final List<Integer> chunk = missing.subList(
+                        i * chunkSize, Math.min((i + 1) * chunkSize, missing.size()));
+                jobs[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        final TextPaint textPaint = style.newPaint();
+                        for (int ix : chunk) {
+                            infos[ix] = layoutParagraph(conf, style, textPaint, paragraphs[ix], density, width);
+                        }
+                    }
+                };
+            }
+            try {
+                mExecutor.runParallel(jobs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        } else if (!missing.isEmpty()) {
+            final TextPaint textPaint = style.newPaint();
+            for (int ix : missing) {
+                infos[ix] = layoutParagraph(conf, style, textPaint, paragraphs[ix], density, width);
+            }
+        }
+
+        for (int ix : missing) {
+            mParagraphCache.put(keys[ix], infos[ix]);
+        }
+        return RNTextSizeParagraph.compose(infos, density);
+    }
+
+    @Nonnull
+    private RNTextSizeParagraph layoutParagraph(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final RNTextSizeStyle style,
+            @Nonnull final TextPaint textPaint,
+            @Nonnull final String paragraph,
+            final float density,
+            final float width
+    ) {
+        final Layout layout = makeLayout(
+                paragraph, textPaint, width, style.textBreakStrategy, style.includeFontPadding);
+        return new RNTextSizeParagraph(resultFromLayout(layout, conf, density, width), layout);
+    }
+
+    private void warmUpAsset(@Nonnull final String fileName) {
+        final List<RNTextSizeConf> confs = new ArrayList<>();
+        final List<String[]> texts = new ArrayList<>();
+        final int errors;
+
+        try {
+            errors = readManifest(RNTextSizeWarmUp.readAsset(mReactContext, fileName), confs, texts);
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot read the warm-up manifest " + fileName, e);
+            return;
+        }
+        emit(EVENT_WARM_UP, warmUp(fileName, confs, texts, errors).toMap());
+    }
+
+    /**
+     * Reads the confs and the texts of each style of the manifest.
+     * @return Number of invalid styles
+     */
+    private int readManifest(
+            @Nonnull final ReadableArray manifest,
+            @Nonnull final List<RNTextSizeConf> confs,
+            @Nonnull final List<String[]> texts
+    ) {
+        int errors = 0;
+
+        for (int ix = 0; ix < manifest.size(); ix++) {
+            try {
+                if (manifest.getType(ix) != ReadableType.Map) {
+                    throw new JSApplicationIllegalArgumentException("The style must be an object.");
+                }
+                final RNTextSizeConf conf = makeConf(manifest.getMap(ix), true);
+                final String[] _texts = toStringArray(conf.getArray("text"));
+
+                confs.add(conf);
+                texts.add(_texts != null ? _texts : new String[0]);
+            } catch (Exception e) {
+                Log.w(TAG, "Invalid style in the warm-up manifest at " + ix, e);
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Loads the typeface of each style and measures its texts, the results are
+     * kept in the caches as with `measure`.
+     */
+    @Nonnull
+    private RNTextSizeWarmUp warmUp(
+            @Nonnull final String source,
+            @Nonnull final List<RNTextSizeConf> confs,
+            @Nonnull final List<String[]> texts,
+            int errors
+    ) {
+        final long start = System.nanoTime();
+        long typefaceNanos = 0L;
+        long layoutNanos = 0L;
+        int styles = 0;
+        int count = 0;
+        final int[] diskHits = new int[1];
+
+        RNTextSizeStats.beginSection("RNTextSize.warmUp");
+        try {
+            for (int ix = 0; ix < confs.size(); ix++) {
+                final RNTextSizeConf conf = confs.get(ix);
+                try {
+                    long time = System.nanoTime();
+                    getStyle(conf);
+                    fontFromSpecs(conf, null);
+                    typefaceNanos += System.nanoTime() - time;
+
+                    time = System.nanoTime();
+                    for (String text : texts.get(ix)) {
+                        if (text != null) {
+                            measureText(conf, text, false, diskHits, null);
+                            count++;
+                        }
+                    }
+                    layoutNanos += System.nanoTime() - time;
+                    styles++;
+                } catch (Exception e) {
+                    Log.w(TAG, "Cannot warm up the style at " + ix, e);
+                    errors++;
+                }
+            }
+        } finally {
+            RNTextSizeStats.endSection();
+        }
+
+        final RNTextSizeWarmUp report = new RNTextSizeWarmUp(
+                source, styles, count, errors, diskHits[0],
+                typefaceNanos, layoutNanos, System.nanoTime() - start);
+        mWarmUpReport = report;
+        return report;
+    }
+
+    /**
+     * Writes the new entries of the disk cache in background.
+     */
+    private void flushDiskCache() {
+        if (mDiskCache != null && mDiskCache.isDirty()) {
+            mExecutor.background(new Runnable() {
+                @Override
+                public void run() {
+                    mDiskCache.flush();
+                }
+            });
+        }
+    }
+
+    private void emit(@Nonnull final String eventName, @Nonnull final WritableMap data) {
+        if (mReactContext.hasActiveCatalystInstance()) {
+            mReactContext
+                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit(eventName, data);
+        }
+    }
+
+    void measureWidths(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String _text,
+            @Nonnull final float[] widths,
+            @Nonnull final RNTextSizeExecutor.Task task,
+            @Nonnull final Promise promise
+    ) {
+        final float density = getCurrentDensity();
+        final float defWidth = conf.getWidth(density);
+
+        final float[] resultWidths = new float[widths.length];
+        final float[] resultHeights = new float[widths.length];
+        final int[] resultLineCounts = new int[widths.length];
+
+        try {
+            final RNTextSizeStyle style = getStyle(conf);
+            final TextPaint textPaint = style.newPaint();
+            final boolean includeFontPadding = style.includeFontPadding;
+            final int maxLines = getMaxLines(conf, textPaint, density);
+
+            // Shape the text once, StaticLayout reuses it in P+
+            final CharSequence text = mPrecomputed != null && !_text.isEmpty()
+                    ? mPrecomputed.get(style, textPaint, _text) : _text;
+            final float desiredWidth = Layout.getDesiredWidth(text, textPaint);
+
+            // Result for widths that don't need automatic line breaks
+            RNTextSizeResult unbounded = null;
+
+            for (int ix = 0; ix < widths.length; ix++) {
+                if (task.isCancelled()) {
+                    promise.reject(E_CANCELLED, "Request cancelled.");
+                    return;
+                }
+
+                final RNTextSizeResult result;
+                final float width = widths[ix] > 0 ? widths[ix] * density : defWidth;
+
+                if (_text.isEmpty()) {
+                    result = new RNTextSizeResult(0f, (float) minimalHeight(density, includeFontPadding), 0f, 0);
+                } else if (width >= desiredWidth) {
+                    if (unbounded == null) {
+                        final Layout layout = makeLayout(text, textPaint, Float.MAX_VALUE,
+                                style.textBreakStrategy, includeFontPadding, maxLines);
+                        unbounded = resultFromLayout(layout, conf, density, Float.MAX_VALUE, maxLines);
+                    }
+                    result = unbounded;
+                } else {
+                    final Layout layout = makeStaticLayout(
+                            text, textPaint, (int) width, style.textBreakStrategy, includeFontPadding, maxLines);
+                    result = resultFromLayout(layout, conf, density, width, maxLines);
+                }
+
+                resultWidths[ix] = result.width;
+                resultHeights[ix] = result.height;
+                resultLineCounts[ix] = result.lineCount;
+            }
+
+            if (conf.binary) {
+                promise.resolve(RNTextSizeBinary.encode(
+                        new float[][]{resultWidths, resultHeights}, new int[][]{resultLineCounts}));
+                return;
+            }
+
+            final WritableMap result = Arguments.createMap();
+            result.putArray("width", RNTextSizeBinary.toArray(resultWidths));
+            result.putArray("height", RNTextSizeBinary.toArray(resultHeights));
+            result.putArray("lineCount", RNTextSizeBinary.toArray(resultLineCounts));
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+        }
+    }
+
+    /**
+     * Set the heights of the texts in the range [start, end) into the target array.
+     *
+     * @param persist Save the new heights in the disk cache, only for the requests from JS
+     * @param times Accumulates the time of the style and layout phases and the
+     *              allocations, null if not recorded
+     */
+    void measureHeights(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String[] texts,
+            final int start,
+            final int end,
+            @Nonnull final float[] heights,
+            @Nonnull final RNTextSizeExecutor.Task task,
+            final boolean persist,
+            @Nullable final long[] times
+    ) {
+        final float density = getCurrentDensity();
+        final float width = conf.getWidth(density);
+        final long allocs = mStats.startAllocs();
+        long time = mStats.start();
+        final RNTextSizeStyle style = getStyle(conf);
+        final boolean includeFontPadding = style.includeFontPadding;
+        final int textBreakStrategy = style.textBreakStrategy;
+
+        final TextPaint textPaint = style.newPaint();
+        final boolean precompute = usePrecomputedText(conf);
+        final int maxLines = getMaxLines(conf, textPaint, density);
+        final float maxHeight = conf.getMaxHeight(density);
+        Layout layout;
+        time = mStats.add(times, RNTextSizeStats.STYLE, time);
+
+        // The heights have their own keys in the disk cache, flatHeights does not use BoringLayout
+        final String heightsKey = mDiskCache != null ? "H" + conf.getMeasureKey(width) : null;
+        final float fontScale = getCurrentFontScale();
+        boolean flush = false;
+
+        for (int ix = start; ix < end && !task.isCancelled(); ix++) {
+            final String text = texts[ix];
+
+            // If this element is `null` or another type, return zero
+            if (text == null) {
+                heights[ix] = 0f;
+                continue;
+            }
+
+            // If empty, return the minimum height of <Text> components
+            if (text.isEmpty()) {
+                heights[ix] = (float) minimalHeight(density, includeFontPadding);
+                continue;
+            }
+
+            long diskKey = 0L;
+            if (heightsKey != null) {
+                diskKey = RNTextSizeDiskCache.hash(density, fontScale, RNTextSizeCache.makeKey(heightsKey, text));
+                final RNTextSizeResult cached = mDiskCache.get(diskKey);
+                if (cached != null) {
+                    heights[ix] = cached.height;
+                    continue;
+                }
+            }
+
+            layout = makeStaticLayout(
+                    precompute ? mPrecomputed.get(style, textPaint, text) : text,
+                    textPaint, (int) width, textBreakStrategy, includeFontPadding, maxLines);
+
+            final int lineCount = maxLines == Integer.MAX_VALUE
+                    ? layout.getLineCount() : getVisibleLines(layout, maxLines, maxHeight);
+            heights[ix] = getHeight(layout, lineCount) / density;
+
+            if (persist && heightsKey != null) {
+                flush |= mDiskCache.put(diskKey, new RNTextSizeResult(0f, heights[ix], 0f, lineCount));
+            }
+        }
+        if (flush) {
+            flushDiskCache();
+        }
+        mStats.add(times, RNTextSizeStats.LAYOUT, time);
+        mStats.addAllocs(times, allocs);
+    }
+
+    void flatMeasure(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String[] texts,
+            @Nonnull final float[] widths,
+            @Nonnull final RNTextSizeExecutor.Task task,
+            @Nonnull final Promise promise
+    ) {
+        final float density = getCurrentDensity();
+        final float width = conf.getWidth(density);
+        final RNTextSizeStyle style = getStyle(conf);
+        final boolean includeFontPadding = style.includeFontPadding;
+
+        final float[] resultWidths = new float[texts.length];
+        final float[] resultHeights = new float[texts.length];
+        final float[] resultLastLineWidths = new float[texts.length];
+        final int[] resultLineCounts = new int[texts.length];
+
+        final TextPaint textPaint = style.newPaint();
+        final boolean precompute = usePrecomputedText(conf);
+        final int maxLines = getMaxLines(conf, textPaint, density);
+        try {
+            final int textBreakStrategy = style.textBreakStrategy;
+
+            for (int ix = 0; ix < texts.length; ix++) {
+                if (task.isCancelled()) {
+                    promise.reject(E_CANCELLED, "Request cancelled.");
+                    return;
+                }
+
+                final String text = texts[ix];
+
+                // If this element is `null` or another type, return zeros
+                if (text == null) {
+                    continue;
+                }
+
+                if (text.isEmpty()) {
+                    resultHeights[ix] = (float) minimalHeight(density, includeFontPadding);
+                    continue;
+                }
+
+                final float itemWidth = widths[ix] > 0 ? widths[ix] * density : width;
+
+                final Layout layout = makeLayout(
+                        precompute ? mPrecomputed.get(style, textPaint, text) : text,
+                        textPaint, itemWidth, textBreakStrategy, includeFontPadding, maxLines);
+                final RNTextSizeResult result = resultFromLayout(layout, conf, density, itemWidth, maxLines);
+
+                resultWidths[ix] = result.width;
+                resultHeights[ix] = result.height;
+                resultLastLineWidths[ix] = Float.isNaN(result.lastLineWidth) ? 0f : result.lastLineWidth;
+                resultLineCounts[ix] = result.lineCount;
+            }
+
+            if (conf.binary) {
+                promise.resolve(RNTextSizeBinary.encode(
+                        new float[][]{resultWidths, resultHeights, resultLastLineWidths},
+                        new int[][]{resultLineCounts}));
+                return;
+            }
+
+            final WritableMap result = Arguments.createMap();
+            result.putArray("width", RNTextSizeBinary.toArray(resultWidths));
+            result.putArray("height", RNTextSizeBinary.toArray(resultHeights));
+            result.putArray("lastLineWidth", RNTextSizeBinary.toArray(resultLastLineWidths));
+            result.putArray("lineCount", RNTextSizeBinary.toArray(resultLineCounts));
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+        }
+    }
+
+    /**
+     * Binary search of the font size of each text, in steps of 1 unit. The texts that
+     * do not fit even with `minFontSize` get this size, `null` elements get zero.
+     */
+    void flatFitFontSize(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String[] texts,
+            @Nonnull final RNTextSizeExecutor.Task task,
+            @Nonnull final Promise promise,
+            final boolean single
+    ) {
+        try {
+            final float density = getCurrentDensity();
+            final int width = (int) conf.getWidth(density);
+            final float _height = conf.height;
+            final float maxHeight = _height > 0 ? _height * density : Float.MAX_VALUE;
+            final int maxLines = conf.numberOfLines;
+
+            final float _maxFontSize = conf.maxFontSize;
+            final float _minFontSize = conf.minFontSize;
+            final float maxFontSize = _maxFontSize > 0 ? _maxFontSize : conf.fontSize;
+            final float minFontSize = _minFontSize > 0 ? Math.min(_minFontSize, maxFontSize) : 1f;
+
+            // The typeface and the letter spacing are resolved once, for all the probes
+            final RNTextSizeStyle style = getStyle(conf);
+            final TextPaint textPaint = style.newPaint();
+            final float[] fontSizes = new float[texts.length];
+            final BreakIterator breaks = BreakIterator.getLineInstance();
+
+            for (int ix = 0; ix < texts.length; ix++) {
+                if (task.isCancelled()) {
+                    promise.reject(E_CANCELLED, "Request cancelled.");
+                    return;
+                }
+
+                final String text = texts[ix];
+                if (text == null) {
+                    continue;
+                }
+                if (text.isEmpty()) {
+                    fontSizes[ix] = maxFontSize;
+                    continue;
+                }
+                breaks.setText(text);
+
+                // Largest size that fits, in [lo, hi]
+                int lo = (int) Math.ceil(minFontSize);
+                int hi = (int) Math.floor(maxFontSize);
+                float fontSize = minFontSize;
+
+                if (fitsFontSize(conf, style, textPaint, text, breaks, maxFontSize, width, maxHeight, maxLines)) {
+                    fontSize = maxFontSize;
+                } else {
+                    if (hi == maxFontSize) {
+                        hi--;
+                    }
+                    while (lo <= hi) {
+                        final int mid = (lo + hi) >>> 1;
+                        if (fitsFontSize(conf, style, textPaint, text, breaks, mid, width, maxHeight, maxLines)) {
+                            fontSize = mid;
+                            lo = mid + 1;
+                        } else {
+                            hi = mid - 1;
+                        }
+                    }
+                }
+                fontSizes[ix] = fontSize;
+            }
+
+            if (single) {
+                promise.resolve((double) fontSizes[0]);
+            } else if (conf.binary) {
+                promise.resolve(RNTextSizeBinary.encode(fontSizes));
+            } else {
+                promise.resolve(RNTextSizeBinary.toArray(fontSizes));
+            }
+        } catch (Exception e) {
+            promise.reject(E_UNKNOWN_ERROR, e);
+        }
+    }
+
+    /**
+     * Lays out the text with the given font size (in SP or DIP) and checks if it
+     * fits in the box. The layout stops after `maxLines` lines on API 23+.
+     *
+     * @param breaks Line breaks of the text, to detect the words broken by the layout
+     */
+    private boolean fitsFontSize(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final RNTextSizeStyle style,
+            @Nonnull final TextPaint textPaint,
+            @Nonnull final String text,
+            @Nonnull final BreakIterator breaks,
+            final float fontSize,
+            final int width,
+            final float maxHeight,
+            final int maxLines
+    ) {
+        // Same rounding as RNTextSizeStyle
+        final float size = (float) Math.ceil(conf.scale(fontSize));
+        textPaint.setTextSize(size);
+        if (!Float.isNaN(style.letterSpacing)) {
+            textPaint.setLetterSpacing(style.letterSpacing / size);
+        }
+
+        final Layout layout = makeStaticLayout(
+                text, textPaint, width, style.textBreakStrategy, style.includeFontPadding, maxLines);
+        final int lineCount = layout.getLineCount();
+
+        return lineCount <= maxLines
+                && layout.getEllipsisCount(lineCount - 1) == 0
+                && layout.getHeight() <= maxHeight
+                && !hasBrokenWords(layout, text, textPaint, breaks, width);
+    }
+
+    /**
+     * StaticLayout splits the words wider than the layout, so any font size would fit.
+     * A line that is too wide, or that ends inside a word that does not fit alone in
+     * the width, means that the word was broken. Hyphenated words fit in a line.
+     */
+    private static boolean hasBrokenWords(
+            @Nonnull final Layout layout,
+            @Nonnull final String text,
+            @Nonnull final TextPaint textPaint,
+            @Nonnull final BreakIterator breaks,
+            final int width
+    ) {
+        final int lineCount = layout.getLineCount();
+
+        for (int line = 0; line < lineCount; line++) {
+            if (layout.getLineMax(line) > width) {
+                return true;
+            }
+            final int end = layout.getLineEnd(line);
+            if (line < lineCount - 1 && !breaks.isBoundary(end)) {
+                final int start = breaks.preceding(end);
+                int wordEnd = breaks.following(end);
+
+                while (wordEnd > start && Character.isWhitespace(text.charAt(wordEnd - 1))) {
+                    wordEnd--;
+                }
+                if (Layout.getDesiredWidth(text, start, wordEnd, textPaint) > width) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the compiled style for the given specs, reusing the previous one
+     * with the same key.
+     */
+    @Nonnull
+    private RNTextSizeStyle getStyle(@Nonnull final RNTextSizeConf conf) {
+        if (conf.styleId >= 0) {
+            RNTextSizeStyle style = mRegisteredStyles.get(conf.styleId);
+
+            if (style == null || !style.isCurrent(conf)) {
+                style = new RNTextSizeStyle(mReactContext, conf.getBase());
+                mRegisteredStyles.replace(conf.styleId, style);
+            }
+            return style;
+        }
+
+        final String key = RNTextSizeStyle.makeKey(conf);
+        RNTextSizeStyle style = mStyles.get(key);
+
+        if (style == null) {
+            style = new RNTextSizeStyle(mReactContext, conf);
+            mStyles.put(key, style);
+        }
+        return style;
+    }
+
+    /**
+     * PrecomputedText is opt-in, it uses more memory and it is useful only if the
+     * same texts are measured again.
+     */
+    private static boolean usePrecomputedText(@Nonnull final RNTextSizeConf conf) {
+        return RNTextSizePrecomputed.isSupported() && conf.usePrecomputedText;
+    }
+
+    /**
+     * Measures a text with the given options, using the cached result if any.
+     *
+     * @param persist Save a new result in the disk cache, only for the requests from JS
+     */
+    @Nonnull
+    private RNTextSizeResult measureText(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String _text,
+            final boolean persist
+    ) {
+        return measureText(conf, _text, persist, null, null);
+    }
+
+    /**
+     * @param diskHits If given, its first element counts the results read from the disk cache
+     * @param times Accumulates the time of the style and layout phases, null if not recorded
+     */
+    @Nonnull
+    private RNTextSizeResult measureText(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String _text,
+            final boolean persist,
+            @Nullable final int[] diskHits,
+            @Nullable final long[] times
+    ) {
+        final float density = getCurrentDensity();
+        final float width = conf.getWidth(density);
+
+        if (conf.splitParagraphs) {
+            return measureParagraphs(conf, _text, density, width);
+        }
+
+        final float fontScale = getCurrentFontScale();
+        mMeasureCache.validate(density, fontScale);
+        final String key = RNTextSizeCache.makeKey(conf.getMeasureKey(width), _text);
+
+        RNTextSizeResult result = mMeasureCache.get(key);
+        if (result == null) {
+            final long diskKey = mDiskCache != null ? RNTextSizeDiskCache.hash(density, fontScale, key) : 0L;
+            result = mDiskCache != null ? mDiskCache.get(diskKey) : null;
+
+            if (result == null) {
+                result = layoutText(conf, _text, density, width, times);
+                if (persist && mDiskCache != null && mDiskCache.put(diskKey, result)) {
+                    flushDiskCache();
+                }
+            } else if (diskHits != null) {
+                diskHits[0]++;
+            }
+            mMeasureCache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Lays out the text without the caches of results, also used by the benchmarks.
+     *
+     * @param times Accumulates the time of the style and layout phases, null if not recorded
+     */
+    @Nonnull
+    RNTextSizeResult layoutText(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String _text,
+            final float density,
+            final float width,
+            @Nullable final long[] times
+    ) {
+        final boolean includeFontPadding = conf.includeFontPadding;
+
+        if (_text.isEmpty()) {
+            return new RNTextSizeResult(0f, (float) minimalHeight(density, includeFontPadding), 0f, 0);
+        }
+
+        long start = mStats.start();
+        final RNTextSizeStyle style = getStyle(conf);
+        final TextPaint textPaint = style.newPaint();
+        start = mStats.add(times, RNTextSizeStats.STYLE, start);
+
+        final CharSequence text = usePrecomputedText(conf) ? mPrecomputed.get(style, textPaint, _text) : _text;
+        final int maxLines = getMaxLines(conf, textPaint, density);
+        final Layout layout =
+                makeLayout(text, textPaint, width, style.textBreakStrategy, includeFontPadding, maxLines);
+        final RNTextSizeResult result = resultFromLayout(layout, conf, density, width, maxLines);
+
+        mStats.add(times, RNTextSizeStats.LAYOUT, start);
+        return result;
+    }
+
+    /**
+     * Like `measureText`, but the result includes the info of all the lines, or
+     * the range given by `linesInfoStart` and `linesInfoEnd`, from the same layout.
+     * These results are not cached.
+     *
+     * @param times Accumulates the time of the phases, null if not recorded
+     */
+    @Nonnull
+    WritableMap measureLines(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final String _text,
+            @Nullable final long[] times
+    ) {
+        final float density = getCurrentDensity();
+        final float width = conf.getWidth(density);
+        final RNTextSizeResult measure;
+        Layout layout = null;
+
+        if (_text.isEmpty()) {
+            measure = new RNTextSizeResult(0f, (float) minimalHeight(density, conf.includeFontPadding), 0f, 0);
+        } else {
+            long time = mStats.start();
+            final RNTextSizeStyle style = getStyle(conf);
+            final TextPaint textPaint = style.newPaint();
+            time = mStats.add(times, RNTextSizeStats.STYLE, time);
+
+            final CharSequence text = usePrecomputedText(conf) ? mPrecomputed.get(style, textPaint, _text) : _text;
+            final int maxLines = getMaxLines(conf, textPaint, density);
+
+            layout = makeLayout(text, textPaint, width, style.textBreakStrategy, style.includeFontPadding, maxLines);
+            measure = resultFromLayout(layout, conf, density, width, maxLines);
+            mStats.add(times, RNTextSizeStats.LAYOUT, time);
+        }
+
+        // Only the visible lines
+        final long marshal = mStats.start();
+        final WritableMap result = measure.toMap();
+        final int lineCount = measure.lineCount;
+        final Integer _start = conf.linesInfoStart;
+        final Integer _end = conf.linesInfoEnd;
+        final int start = _start != null ? Math.max(0, Math.min(_start, lineCount)) : 0;
+        final int end = _end != null ? Math.max(start, Math.min(_end, lineCount)) : lineCount;
+
+        final int[] starts = new int[end - start];
+        final int[] ends = new int[end - start];
+        final float[] bottoms = new float[end - start];
+        final float[] widths = new float[end - start];
+
+        for (int line = start; line < end; line++) {
+            starts[line - start] = layout.getLineStart(line);
+            ends[line - start] = layout.getLineVisibleEnd(line);
+            bottoms[line - start] = layout.getLineBottom(line) / density;
+            widths[line - start] = layout.getLineMax(line) / density;
+        }
+
+        final WritableMap lines = Arguments.createMap();
+        lines.putInt("line", start);
+        lines.putArray("start", RNTextSizeBinary.toArray(starts));
+        lines.putArray("end", RNTextSizeBinary.toArray(ends));
+        lines.putArray("bottom", RNTextSizeBinary.toArray(bottoms));
+        lines.putArray("width", RNTextSizeBinary.toArray(widths));
+        result.putMap("linesInfo", lines);
+        mStats.add(times, RNTextSizeStats.MARSHAL, marshal);
+        return result;
+    }
+
+    /**
+     * Lays out the fragments as one spanned text. These results are not cached.
+     */
+    @Nonnull
+    RNTextSizeResult measureFragments(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final List<String> texts,
+            @Nonnull final List<RNTextSizeConf> confs
+    ) {
+        final float density = getCurrentDensity();
+        final float width = conf.getWidth(density);
+        final SpannableStringBuilder text = new SpannableStringBuilder();
+
+        for (int ix = 0; ix < texts.size(); ix++) {
+            final int start = text.length();
+            text.append(texts.get(ix));
+            if (text.length() > start) {
+                RNTextSizeSpannedText.setSpans(mReactContext, confs.get(ix), text, start, text.length());
+            }
+        }
+
+        if (text.length() == 0) {
+            return new RNTextSizeResult(0f, (float) minimalHeight(density, conf.includeFontPadding), 0f, 0);
+        }
+
+        // The font of each char is given by the spans, so the lines can be shorter than
+        // the font of the specs and only `numberOfLines` limits the layout
+        final TextPaint textPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        final int maxLines = conf.numberOfLines;
+        final Layout layout = makeLayout(
+                text, textPaint, width, conf.getTextBreakStrategy(), conf.includeFontPadding, maxLines);
+        return resultFromLayout(layout, conf, density, width, maxLines);
+    }
+
+    /**
+     * Makes a BoringLayout for single-line text that fits in the given width,
+     * or a StaticLayout with the minimum width required by the text.
+     */
+    @Nonnull
+    private Layout makeLayout(
+            @Nonnull final CharSequence text,
+            @Nonnull final TextPaint textPaint,
+            final float width,
+            final int textBreakStrategy,
+            final boolean includeFontPadding
+    ) {
+        return makeLayout(text, textPaint, width, textBreakStrategy, includeFontPadding, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxLines Max number of lines to lay out, from {@link #getMaxLines}
+     */
+    @Nonnull
+    private Layout makeLayout(
+            @Nonnull final CharSequence text,
+            @Nonnull final TextPaint textPaint,
+            final float width,
+            final int textBreakStrategy,
+            final boolean includeFontPadding,
+            final int maxLines
+    ) {
+        final BoringLayout.Metrics boring = BoringLayout.isBoring(text, textPaint);
+        int hintWidth = (int) width;
+
+        if (boring == null) {
+            // Not boring, ie. the text is multiline or contains unicode characters.
+            final float desiredWidth = Layout.getDesiredWidth(text, textPaint);
+            if (desiredWidth <= width) {
+                hintWidth = (int) Math.ceil(desiredWidth);
+            }
+        } else if (boring.width <= width) {
+            // Single-line and width unknown or bigger than the width of the text.
+            mStats.countLayout(true);
+            return BoringLayout.make(
+                    text,
+                    textPaint,
+                    boring.width,
+                    Layout.Alignment.ALIGN_NORMAL,
+                    SPACING_MULTIPLIER,
+                    SPACING_ADDITION,
+                    boring,
+                    includeFontPadding);
+        }
+
+        return makeStaticLayout(text, textPaint, hintWidth, textBreakStrategy, includeFontPadding, maxLines);
+    }
+
+    /**
+     * Max number of lines given by the `numberOfLines` and `maxHeight` options, or
+     * Integer.MAX_VALUE if there's no limit. The lines are at least as tall as the
+     * font, so this is an upper bound for `maxHeight`.
+     */
+    private static int getMaxLines(
+            @Nonnull final RNTextSizeConf conf,
+            @Nonnull final TextPaint textPaint,
+            final float density
+    ) {
+        final int numberOfLines = conf.numberOfLines;
+        final float maxHeight = conf.getMaxHeight(density);
+
+        if (maxHeight == Float.MAX_VALUE) {
+            return numberOfLines;
+        }
+        final Paint.FontMetricsInt metrics = textPaint.getFontMetricsInt();
+        final int lineHeight = Math.max(1, metrics.descent - metrics.ascent);
+        return Math.min(numberOfLines, Math.max(1, (int) (maxHeight / lineHeight)));
+    }
+
+    /**
+     * Number of lines of the layout that are visible with the given limits,
+     * at least one.
+     */
+    private static int getVisibleLines(
+            @Nonnull final Layout layout,
+            final int maxLines,
+            final float maxHeight
+    ) {
+        int lines = Math.min(layout.getLineCount(), maxLines);
+        while (lines > 1 && getHeight(layout, lines) > maxHeight) {
+            lines--;
+        }
+        return lines;
+    }
+
+    /**
+     * Height in pixels of the first lines of the layout, with the bottom padding.
+     */
+    private static int getHeight(@Nonnull final Layout layout, final int lines) {
+        return lines < layout.getLineCount()
+                ? layout.getLineBottom(lines - 1) + layout.getBottomPadding()
+                : layout.getHeight();
+    }
+
+    @Nonnull
+    private static RNTextSizeResult resultFromLayout(
+            @Nonnull final Layout layout,
+            @Nonnull final RNTextSizeConf conf,
+            final float density,
+            final float width
+    ) {
+        return resultFromLayout(layout, conf, density, width, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxLines Max number of lines laid out, the result is clamped to the
+     *                 lines visible with this limit and the options of the conf.
+     */
+    @Nonnull
+    private static RNTextSizeResult resultFromLayout(
+            @Nonnull final Layout layout,
+            @Nonnull final RNTextSizeConf conf,
+            final float density,
+            final float width,
+            final int maxLines
+    ) {
+        final int layoutLines = layout.getLineCount();
+        final int lineCount = conf.hasLineLimit()
+                ? getVisibleLines(layout, maxLines, conf.getMaxHeight(density)) : layoutLines;
+        final boolean truncated = lineCount < layoutLines
+                || lineCount > 0 && layout.getEllipsisCount(lineCount - 1) > 0;
+        float rectWidth;
+        float lastLineWidth = Float.NaN;
+
+        if (conf.usePreciseWidth) {
+            float lastWidth = 0f;
+            // Layout.getWidth() returns the configured max width, we must
+            // go slow to get the used one (and with the text trimmed).
+            rectWidth = 0f;
+            for (int i = 0; i < lineCount; i++) {
+                lastWidth = layout.getLineMax(i);
+                if (lastWidth > rectWidth) {
+                    rectWidth = lastWidth;
+                }
+            }
+            lastLineWidth = lastWidth / density;
+        } else {
+            rectWidth = layout.getWidth();
+        }
+
+        final float resultWidth = Math.min(rectWidth / density, width);
+        final float resultHeight = getHeight(layout, lineCount) / density;
+
+        final Integer lineInfoForLine = conf.lineInfoForLine;
+        if (lineInfoForLine != null && lineInfoForLine >= 0) {
+            final int line = Math.min(lineInfoForLine, lineCount - 1);
+            return new RNTextSizeResult(resultWidth, resultHeight, lastLineWidth, lineCount, truncated,
+                    line,
+                    layout.getLineStart(line),
+                    layout.getLineVisibleEnd(line),
+                    layout.getLineBottom(line) / density,
+                    layout.getLineMax(line) / density);
+        }
+
+        return new RNTextSizeResult(resultWidth, resultHeight, lastLineWidth, lineCount, truncated);
+    }
+
+    @Nonnull
+    private StaticLayout makeStaticLayout(
+            @Nonnull final CharSequence text,
+            @Nonnull final TextPaint textPaint,
+            final int width,
+            final int textBreakStrategy,
+            final boolean includeFontPadding
+    ) {
+        return makeStaticLayout(text, textPaint, width, textBreakStrategy, includeFontPadding, Integer.MAX_VALUE);
+    }
+
+    /**
+     * With a limit of lines, API 23+ stops the layout after the last visible line,
+     * which is ellipsized. Older versions lay out the whole text and the result
+     * is clamped by {@link #resultFromLayout}.
+     */
+    @Nonnull
+    private StaticLayout makeStaticLayout(
+            @Nonnull final CharSequence text,
+            @Nonnull final TextPaint textPaint,
+            final int width,
+            final int textBreakStrategy,
+            final boolean includeFontPadding,
+            final int maxLines
+    ) {
+        mStats.countLayout(false);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            final StaticLayout.Builder builder = StaticLayout.Builder.obtain(text, 0, text.length(), textPaint, width)
+                    .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                    .setBreakStrategy(textBreakStrategy)
+                    .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NORMAL)
+                    .setIncludePad(includeFontPadding)
+                    .setLineSpacing(SPACING_ADDITION, SPACING_MULTIPLIER);
+            if (maxLines != Integer.MAX_VALUE) {
+                builder.setMaxLines(maxLines).setEllipsize(TextUtils.TruncateAt.END);
+            }
+            return builder.build();
+        } else {
+            return new StaticLayout(
+                    text,
+                    textPaint,
+                    width,
+                    Layout.Alignment.ALIGN_NORMAL,
+                    SPACING_MULTIPLIER,
+                    SPACING_ADDITION,
+                    includeFontPadding
+            );
+        }
+    }
+
+    private void preloadFonts(@Nonnull final List<String> families) {
+        mExecutor.background(new Runnable() {
+            @Override
+            public void run() {
+                RNTextSizeConf.preloadFonts(mReactContext, families);
+            }
+        });
+    }
+
+    /**
+     * Copy the texts to a plain array, so it can be read from other threads.
+     * Elements that are not strings are set to `null`.
+     */
     @Nullable
-    private RNTextSizeConf getConf(final ReadableMap specs, final Promise promise, boolean forText) {
-        if (specs == null) {
-            promise.reject(E_MISSING_PARAMETER, "Missing parameter object.");
+    private static String[] toStringArray(@Nullable final ReadableArray array) {
+        if (array == null) {
             return null;
         }
-        return new RNTextSizeConf(specs, forText);
+
+        final String[] result = new String[array.size()];
+        for (int ix = 0; ix < result.length; ix++) {
+            if (array.getType(ix) == ReadableType.String) {
+                result[ix] = array.getString(ix);
+            }
+        }
+        return result;
     }
 
-    @Nullable
-    private RNTextSizeConf getConf(final ReadableMap specs, final Promise promise) {
-        return getConf(specs, promise, false);
+    /**
+     * Copy the numbers to a plain array of the given size. Missing elements or elements
+     * that are not numbers are set to NaN.
+     */
+    @Nonnull
+    private static float[] toFloatArray(@Nullable final ReadableArray array, final int size) {
+        final float[] result = new float[size];
+        final int count = array != null ? Math.min(array.size(), size) : 0;
+
+        for (int ix = 0; ix < size; ix++) {
+            result[ix] = ix < count && array.getType(ix) == ReadableType.Number
+                    ? (float) array.getDouble(ix) : Float.NaN;
+        }
+        return result;
     }
 
     /**
@@ -402,32 +2379,54 @@ class RNTextSizeModule extends ReactContextBaseJavaModule {
         return makeFontSpecs(suffix, fontSize, letterSpacing, false);
     }
 
+    /**
+     * Returns the font info of the conf, from the cache if the same font and size
+     * was already requested.
+     *
+     * @param times Accumulates the time of the style and layout phases, null if not recorded
+     */
     @Nonnull
-    private WritableMap fontInfoFromTypeface(
-            @Nonnull final TextPaint textPaint,
-            @Nonnull final Typeface typeface,
-            @Nonnull final RNTextSizeConf conf
+    private RNTextSizeFontInfo fontFromSpecs(
+            @Nonnull final RNTextSizeConf conf,
+            @Nullable final long[] times
     ) {
-        // Info is always in unscaled values
+        long start = mStats.start();
+        final Typeface typeface = RNTextSizeConf.getFont(mReactContext, conf.fontFamily, conf.fontStyle);
+        final int fontSize = (int) Math.ceil(conf.scale(conf.fontSize));
         final float density = getCurrentDensity();
-        final Paint.FontMetrics metrics = new Paint.FontMetrics();
-        final float lineHeight = textPaint.getFontMetrics(metrics);
-
-        final WritableMap info = Arguments.createMap();
-        info.putString("fontFamily", conf.getString("fontFamily"));
-        info.putString("fontWeight", typeface.isBold() ? "bold" : "normal");
-        info.putString("fontStyle", typeface.isItalic() ? "italic" : "normal");
-        info.putDouble("fontSize", textPaint.getTextSize() / density);
-        info.putDouble("leading", metrics.leading / density);
-        info.putDouble("ascender", metrics.ascent / density);
-        info.putDouble("descender", metrics.descent / density);
-        info.putDouble("top", metrics.top / density);
-        info.putDouble("bottom", metrics.bottom / density);
-        info.putDouble("lineHeight", lineHeight / density);
-        info.putInt("_hash", typeface.hashCode());
+
+        final String key = RNTextSizeFontInfo.makeKey(conf.fontFamily, typeface, fontSize, density);
+        RNTextSizeFontInfo info = mFontInfos.get(key);
+        start = mStats.add(times, RNTextSizeStats.STYLE, start);
+
+        if (info == null) {
+            info = makeFontInfo(conf.fontFamily, typeface, fontSize, density);
+            mFontInfos.put(key, info);
+        }
+        mStats.add(times, RNTextSizeStats.LAYOUT, start);
         return info;
     }
 
+    /**
+     * Makes the font info without the cache, also used by the benchmarks.
+     */
+    @Nonnull
+    static RNTextSizeFontInfo makeFontInfo(
+            @Nullable final String fontFamily,
+            @Nonnull final Typeface typeface,
+            final int fontSize,
+            final float density
+    ) {
+        // It's important to pass the ANTI_ALIAS_FLAG flag to the constructor rather than setting it
+        // later by calling setFlags. This is because the latter approach triggers a bug on Android 4.4.2.
+        // The bug is that unicode emoticons aren't measured properly which causes text to be clipped.
+        final TextPaint textPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        textPaint.setTypeface(typeface);
+        textPaint.setTextSize(fontSize);
+
+        return new RNTextSizeFontInfo(fontFamily, typeface, textPaint, density);
+    }
+
     /**
      * Retuns the current density.
      */
@@ -436,58 +2435,12 @@ class RNTextSizeModule extends ReactContextBaseJavaModule {
         return DisplayMetricsHolder.getWindowDisplayMetrics().density;
     }
 
-    private static final String[] FILE_EXTENSIONS = {".ttf", ".otf"};
-    private static final String FONTS_ASSET_PATH = "fonts";
-
-    private String[] fontsInAssets = null;
-
     /**
-     * Set the font names in assets/fonts into the target array.
-     * @param destArr Target
+     * Retuns the current font scale, as used by PixelUtil.toPixelFromSP.
      */
-    private void getFontsInAssets(@Nonnull WritableArray destArr) {
-        String[] srcArr = fontsInAssets;
-
-        if (srcArr == null) {
-            final AssetManager assetManager = mReactContext.getAssets();
-            ArrayList<String> tmpArr = new ArrayList<>();
-
-            if (assetManager != null) {
-                try {
-                    String[] list = assetManager.list(FONTS_ASSET_PATH);
-
-                    if (list != null) {
-                        for (String spec : list) {
-                            addFamilyToArray(tmpArr, spec);
-                        }
-                    }
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                }
-            }
-
-            Collections.sort(tmpArr, String.CASE_INSENSITIVE_ORDER);
-            fontsInAssets = srcArr = tmpArr.toArray(new String[0]);
-        }
-
-        for (String name : srcArr) {
-            destArr.pushString(name);
-        }
-    }
-
-    private void addFamilyToArray(
-            @Nonnull final List<String> outArr,
-            @Nonnull final String spec
-    ) {
-        for (String ext : FILE_EXTENSIONS) {
-            if (spec.endsWith(ext)) {
-                final String name = spec.substring(0, spec.length() - ext.length());
-
-                if (!outArr.contains(name)) {
-                    outArr.add(name);
-                }
-                break;
-            }
-        }
+    @SuppressWarnings("deprecation")
+    private float getCurrentFontScale() {
+        final DisplayMetrics metrics = DisplayMetricsHolder.getWindowDisplayMetrics();
+        return metrics.scaledDensity / metrics.density;
     }
 }
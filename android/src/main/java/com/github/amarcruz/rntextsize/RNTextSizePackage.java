@@ -13,10 +13,68 @@ import java.util.List;
 @SuppressWarnings("unused")
 public class RNTextSizePackage implements ReactPackage {
 
+    private final int mPoolSize;
+    private final List<String> mPreloadFamilies;
+    private final boolean mDiskCache;
+    private final String mWarmUpAsset;
+
+    public RNTextSizePackage() {
+        this(0);
+    }
+
+    /**
+     * @param poolSize Number of threads used to measure big batches of text,
+     *                 zero to use the number of processors less one.
+     */
+    public RNTextSizePackage(int poolSize) {
+        this(poolSize, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param poolSize Number of threads used to measure big batches of text,
+     *                 zero to use the number of processors less one.
+     * @param preloadFamilies Font families to load in background at startup.
+     */
+    public RNTextSizePackage(int poolSize, List<String> preloadFamilies) {
+        this(poolSize, preloadFamilies, false);
+    }
+
+    /**
+     * @param poolSize Number of threads used to measure big batches of text,
+     *                 zero to use the number of processors less one.
+     * @param preloadFamilies Font families to load in background at startup.
+     * @param diskCache Keep the results of `measure` and `flatHeights` in the
+     *                  cache dir of the App, to reuse them in the next runs.
+     */
+    public RNTextSizePackage(int poolSize, List<String> preloadFamilies, boolean diskCache) {
+        this(poolSize, preloadFamilies, diskCache, null);
+    }
+
+    /**
+     * @param poolSize Number of threads used to measure big batches of text,
+     *                 zero to use the number of processors less one.
+     * @param preloadFamilies Font families to load in background at startup.
+     * @param diskCache Keep the results of `measure` and `flatHeights` in the
+     *                  cache dir of the App, to reuse them in the next runs.
+     * @param warmUpAsset Name of a JSON file in assets with the warm-up manifest,
+     *                    measured in background at startup. Can be `null`.
+     */
+    public RNTextSizePackage(
+            int poolSize,
+            List<String> preloadFamilies,
+            boolean diskCache,
+            String warmUpAsset
+    ) {
+        mPoolSize = poolSize;
+        mPreloadFamilies = preloadFamilies;
+        mDiskCache = diskCache;
+        mWarmUpAsset = warmUpAsset;
+    }
+
     @Override
     public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
       List<NativeModule> modules = new ArrayList<>();
-      modules.add(new RNTextSizeModule(reactContext));
+      modules.add(new RNTextSizeModule(reactContext, mPoolSize, mPreloadFamilies, mDiskCache, mWarmUpAsset));
       return modules;
     }
 
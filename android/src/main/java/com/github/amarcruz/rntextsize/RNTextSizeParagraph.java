@@ -0,0 +1,59 @@
+package com.github.amarcruz.rntextsize;
+
+import android.text.Layout;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Result of a paragraph measured alone, with its font padding in pixels.
+ *
+ * The paragraphs are independent in StaticLayout, the only difference with the
+ * layout of the whole text is the font padding, which is applied only to the
+ * first and the last line. See {@link #compose}.
+ */
+final class RNTextSizeParagraph {
+    final RNTextSizeResult result;
+    final int topPadding;
+    final int bottomPadding;
+
+    /** Height in pixels without the font padding */
+    final int height;
+
+    RNTextSizeParagraph(@Nonnull final RNTextSizeResult result, @Nonnull final Layout layout) {
+        this.result = result;
+        // Layout returns the top padding as a negative number
+        topPadding = -layout.getTopPadding();
+        bottomPadding = layout.getBottomPadding();
+        height = layout.getHeight() - topPadding - bottomPadding;
+    }
+
+    /**
+     * Approximate memory used by an instance, in bytes.
+     */
+    static int sizeOf() {
+        return RNTextSizeResult.sizeOf() + 32;
+    }
+
+    /**
+     * Makes the result of the whole text from the result of its paragraphs.
+     *
+     * @param paragraphs The paragraphs, in order, at least one
+     * @param density The density used to measure the paragraphs
+     */
+    @Nonnull
+    static RNTextSizeResult compose(@Nonnull final RNTextSizeParagraph[] paragraphs, final float density) {
+        final RNTextSizeParagraph first = paragraphs[0];
+        final RNTextSizeParagraph last = paragraphs[paragraphs.length - 1];
+
+        float width = 0f;
+        int height = first.topPadding + last.bottomPadding;
+        int lineCount = 0;
+
+        for (RNTextSizeParagraph paragraph : paragraphs) {
+            width = Math.max(width, paragraph.result.width);
+            height += paragraph.height;
+            lineCount += paragraph.result.lineCount;
+        }
+        return new RNTextSizeResult(width, height / density, last.result.lastLineWidth, lineCount);
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.amarcruz.rntextsize;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.text.Layout;
+import android.text.PrecomputedText;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Cache of PrecomputedText (Android P+), keyed by the style and the text.
+ *
+ * PrecomputedText does the glyph shaping once and StaticLayout reuses it if the
+ * TextPaint and the break options are the same, so measuring the same text again
+ * (e.g. with another width) only has to run the line breaking.
+ */
+@TargetApi(Build.VERSION_CODES.P)
+final class RNTextSizePrecomputed {
+
+    private static final int MAX_CACHE_SIZE = 1024 * 1024;
+
+    private final LruCache<String, PrecomputedText> mCache =
+            new LruCache<String, PrecomputedText>(MAX_CACHE_SIZE) {
+                @Override
+                protected int sizeOf(final String key, final PrecomputedText value) {
+                    // key chars + widths of each char + overhead
+                    return key.length() * 2 + value.length() * 4 + 128;
+                }
+            };
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+    }
+
+    /**
+     * Returns the precomputed text for the style.
+     *
+     * @param style The compiled style
+     * @param textPaint Paint with the style, must be used to make the layout
+     * @param text The text
+     */
+    @Nonnull
+    PrecomputedText get(
+            @Nonnull final RNTextSizeStyle style,
+            @Nonnull final TextPaint textPaint,
+            @Nonnull final String text
+    ) {
+        final String key = RNTextSizeCache.makeKey(style.key, text);
+        PrecomputedText precomputed = mCache.get(key);
+
+        if (precomputed == null) {
+            final PrecomputedText.Params params = new PrecomputedText.Params.Builder(textPaint)
+                    .setBreakStrategy(style.textBreakStrategy)
+                    .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NORMAL)
+                    .build();
+
+            precomputed = PrecomputedText.create(text, params);
+            mCache.put(key, precomputed);
+        }
+        return precomputed;
+    }
+
+    void clear() {
+        mCache.evictAll();
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.amarcruz.rntextsize;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable result of `measure`, in DIP. Unlike WritableMap, it can be cached and
+ * converted to a new map each time it is sent to JS.
+ */
+final class RNTextSizeResult {
+
+    final float width;
+    final float height;
+    final float lastLineWidth;          // NaN if not requested
+    final int lineCount;
+    final boolean truncated;            // lines hidden by numberOfLines or maxHeight
+
+    // Info for `lineInfoForLine`, `line` is -1 if not requested
+    final int line;
+    final int lineStart;
+    final int lineEnd;
+    final float lineBottom;
+    final float lineWidth;
+
+    RNTextSizeResult(
+            final float width,
+            final float height,
+            final float lastLineWidth,
+            final int lineCount
+    ) {
+        this(width, height, lastLineWidth, lineCount, false, -1, 0, 0, 0f, 0f);
+    }
+
+    RNTextSizeResult(
+            final float width,
+            final float height,
+            final float lastLineWidth,
+            final int lineCount,
+            final boolean truncated
+    ) {
+        this(width, height, lastLineWidth, lineCount, truncated, -1, 0, 0, 0f, 0f);
+    }
+
+    RNTextSizeResult(
+            final float width,
+            final float height,
+            final float lastLineWidth,
+            final int lineCount,
+            final boolean truncated,
+            final int line,
+            final int lineStart,
+            final int lineEnd,
+            final float lineBottom,
+            final float lineWidth
+    ) {
+        this.width = width;
+        this.height = height;
+        this.lastLineWidth = lastLineWidth;
+        this.lineCount = lineCount;
+        this.truncated = truncated;
+        this.line = line;
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        this.lineBottom = lineBottom;
+        this.lineWidth = lineWidth;
+    }
+
+    /**
+     * Approximate memory used by this instance, in bytes.
+     */
+    static int sizeOf() {
+        return 48;
+    }
+
+    @Nonnull
+    WritableMap toMap() {
+        final WritableMap result = Arguments.createMap();
+
+        result.putDouble("width", width);
+        result.putDouble("height", height);
+        if (!Float.isNaN(lastLineWidth)) {
+            result.putDouble("lastLineWidth", lastLineWidth);
+        }
+        result.putInt("lineCount", lineCount);
+        result.putBoolean("truncated", truncated);
+
+        if (line >= 0) {
+            final WritableMap info = Arguments.createMap();
+            info.putInt("line", line);
+            info.putInt("start", lineStart);
+            info.putInt("end", lineEnd);
+            info.putDouble("bottom", lineBottom);
+            info.putDouble("width", lineWidth);
+            result.putMap("lineInfo", info);
+        }
+
+        return result;
+    }
+}
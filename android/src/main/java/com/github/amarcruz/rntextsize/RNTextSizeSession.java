@@ -0,0 +1,63 @@
+package com.github.amarcruz.rntextsize;
+
+import java.util.HashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * State of a measurement session, for a text that changes a little each time
+ * (e.g. the input of a composer or a message received by streaming).
+ *
+ * The text is measured by paragraphs and the session keeps the result of each
+ * paragraph of the last text, so in the next measurement only the new or edited
+ * paragraphs need a layout.
+ */
+final class RNTextSizeSession {
+
+    final RNTextSizeConf conf;
+
+    private HashMap<String, RNTextSizeParagraph> mParagraphs = new HashMap<>();
+    private HashMap<String, RNTextSizeParagraph> mNextParagraphs = new HashMap<>();
+    private float mUnitScale;
+
+    RNTextSizeSession(@Nonnull final RNTextSizeConf conf) {
+        this.conf = conf;
+        mUnitScale = conf.scale(1f);
+    }
+
+    /**
+     * Returns the result of the paragraph in the last text, if any.
+     */
+    @Nullable
+    RNTextSizeParagraph get(@Nonnull final String paragraph) {
+        // Discard all if the density or the font scale has changed
+        if (conf.scale(1f) != mUnitScale) {
+            mUnitScale = conf.scale(1f);
+            mParagraphs.clear();
+        }
+        return mParagraphs.get(paragraph);
+    }
+
+    /**
+     * Adds a paragraph of the current text.
+     */
+    void put(@Nonnull final String paragraph, @Nonnull final RNTextSizeParagraph result) {
+        mNextParagraphs.put(paragraph, result);
+    }
+
+    /**
+     * Ends the measurement of the current text, the paragraphs that are not used
+     * anymore are discarded.
+     */
+    void commit() {
+        final HashMap<String, RNTextSizeParagraph> prev = mParagraphs;
+        mParagraphs = mNextParagraphs;
+        mNextParagraphs = prev;
+        mNextParagraphs.clear();
+    }
+
+    int size() {
+        return mParagraphs.size();
+    }
+}
@@ -12,19 +12,26 @@ import com.facebook.react.bridge.ReactApplicationContext;
 
 import javax.annotation.Nonnull;
 
+/**
+ * Applies the user specs to the fragments of rich text through spans. Texts with a
+ * single style are measured faster with the TextPaint of {@link RNTextSizeStyle}.
+ */
 final class RNTextSizeSpannedText {
 
+    private static final int SPAN_FLAGS = Spannable.SPAN_EXCLUSIVE_EXCLUSIVE;
+
     RNTextSizeSpannedText() {}
 
-    static Spannable spannedFromSpecsAndText(
+    /**
+     * Applies the specs to a range of the text, for a fragment of rich text.
+     */
+    static void setSpans(
             @Nonnull final ReactApplicationContext context,
             @Nonnull final RNTextSizeConf conf,
-            @Nonnull final Spannable text
+            @Nonnull final Spannable text,
+            final int start,
+            final int end
     ) {
-
-        //final SpannableString str = new SpannableString(text);
-        final int end = text.length();
-
         // Actual order of calling {@code execute} does NOT matter,
         // but the {@code priority} DOES matter (higher numbers go first).
         int priority = -1;
@@ -34,35 +41,34 @@ final class RNTextSizeSpannedText {
             if (!Float.isNaN(conf.letterSpacing)) {
                 final float letterSpacing = conf.scale(conf.letterSpacing);
                 priority++;
-                setSpanOperation(text, end, priority,
+                setSpanOperation(text, start, end, SPAN_FLAGS, priority,
                         new CustomLetterSpacingSpan(letterSpacing));
             }
         }
 
         final int fontSize = (int) Math.ceil(conf.scale(conf.fontSize));
         priority++;
-        setSpanOperation(text, end, priority, new AbsoluteSizeSpan(fontSize));
+        setSpanOperation(text, start, end, SPAN_FLAGS, priority, new AbsoluteSizeSpan(fontSize));
 
-        if (conf.fontFamily != null || conf.has("fontStyle") || conf.has("fontWeight")) {
+        if (conf.fontFamily != null || conf.hasFontStyle) {
             priority++;
-            setSpanOperation(text, end, priority,
+            setSpanOperation(text, start, end, SPAN_FLAGS, priority,
                     new CustomStyleSpan(RNTextSizeConf.getFont(context, conf.fontFamily, conf.fontStyle)));
         }
-
-        return text;
     }
 
     private static void setSpanOperation(
             Spannable str,
+            int start,
             int end,
+            int flags,
             int priority,
             Object span
     ) {
-        // Here all spans will automatically extend from the start to the end of the text.
-        int spanFlags = Spannable.SPAN_INCLUSIVE_INCLUSIVE;
+        int spanFlags = flags;
         spanFlags |= (priority << Spannable.SPAN_PRIORITY_SHIFT) & Spannable.SPAN_PRIORITY;
 
-        str.setSpan(span, 0, end, spanFlags);
+        str.setSpan(span, start, end, spanFlags);
     }
 
     /**
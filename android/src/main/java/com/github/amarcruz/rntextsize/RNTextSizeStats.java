@@ -0,0 +1,282 @@
+package com.github.amarcruz.rntextsize;
+
+import android.os.Debug;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.systrace.Systrace;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Optional timing metrics of the exposed methods, disabled by default.
+ *
+ * Each method has a latency histogram for each phase: parsing of the specs (conf),
+ * resolution of the style (style), construction of the layout (layout), conversion
+ * of the result for JS (marshal) and the total, from the call to the resolution of
+ * the promise, including the time waiting in the executor.
+ *
+ * The times of a request are summed in a `long[SLOTS]` array, with the objects
+ * allocated by the threads that measured it in the ALLOCS slot, and recorded once
+ * when the promise is resolved, so all the histograms of a method have one sample
+ * per resolved call.
+ */
+final class RNTextSizeStats {
+
+    static final int CONF = 0;
+    static final int STYLE = 1;
+    static final int LAYOUT = 2;
+    static final int MARSHAL = 3;
+    static final int TOTAL = 4;
+    static final int PHASES = 5;
+    static final int ALLOCS = 5;
+    static final int SLOTS = 6;
+
+    private static final String[] PHASE_NAMES = {"conf", "style", "layout", "marshal", "total"};
+
+    private volatile boolean mEnabled;
+    private final ConcurrentHashMap<String, Histogram[]> mMethods = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> mAllocations = new ConcurrentHashMap<>();
+    private final AtomicLong mBoringLayouts = new AtomicLong();
+    private final AtomicLong mStaticLayouts = new AtomicLong();
+
+    /**
+     * Histogram of latencies with buckets in powers of 2 of microseconds.
+     */
+    private static final class Histogram {
+        private static final int BUCKETS = 24;      // up to ~16 seconds
+
+        private final long[] mBuckets = new long[BUCKETS];
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        synchronized void add(final long nanos) {
+            final long micros = nanos / 1000L;
+            final int bucket = micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+            mBuckets[bucket]++;
+            mCount++;
+            mTotalNanos += nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+
+        /**
+         * Upper bound of the bucket that contains the given percentile, in microseconds.
+         */
+        private long percentile(final double p) {
+            final long target = (long) Math.ceil(mCount * p);
+            long count = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                count += mBuckets[i];
+                if (count >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        @Nonnull
+        synchronized WritableMap toMap() {
+            final WritableMap map = Arguments.createMap();
+            map.putDouble("count", mCount);
+            map.putDouble("totalMs", mTotalNanos / 1e6);
+            map.putDouble("meanUs", mCount > 0 ? mTotalNanos / 1e3 / mCount : 0);
+            map.putDouble("maxUs", mMaxNanos / 1e3);
+            map.putDouble("p50Us", mCount > 0 ? percentile(0.5) : 0);
+            map.putDouble("p90Us", mCount > 0 ? percentile(0.9) : 0);
+            map.putDouble("p99Us", mCount > 0 ? percentile(0.99) : 0);
+            return map;
+        }
+    }
+
+    /**
+     * Number of objects allocated per call.
+     */
+    private static final class Counter {
+        private long mCount;
+        private long mTotal;
+        private long mMax;
+
+        synchronized void add(final long value) {
+            mCount++;
+            mTotal += value;
+            if (value > mMax) {
+                mMax = value;
+            }
+        }
+
+        @Nonnull
+        synchronized WritableMap toMap() {
+            final WritableMap map = Arguments.createMap();
+            map.putDouble("count", mCount);
+            map.putDouble("mean", mCount > 0 ? (double) mTotal / mCount : 0);
+            map.putDouble("max", mMax);
+            return map;
+        }
+    }
+
+    /**
+     * The allocation counters of the runtime are only updated while enabled.
+     */
+    @SuppressWarnings("deprecation")
+    synchronized void setEnabled(final boolean enabled) {
+        if (enabled != mEnabled) {
+            if (enabled) {
+                Debug.startAllocCounting();
+            } else {
+                Debug.stopAllocCounting();
+            }
+        }
+        mEnabled = enabled;
+    }
+
+    /**
+     * Returns the start time for {@link #add}, zero if the stats are disabled.
+     */
+    long start() {
+        return mEnabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Adds the time elapsed since `start` to `times[phase]` and returns the current
+     * time, so it can be used as the start of the next phase. The array is recorded
+     * once with {@link #recordTimes}, if null nothing is added.
+     */
+    long add(@Nullable final long[] times, final int phase, final long start) {
+        if (!mEnabled || start == 0L || times == null) {
+            return 0L;
+        }
+        final long now = System.nanoTime();
+        times[phase] += now - start;
+        return now;
+    }
+
+    /**
+     * Returns the number of objects allocated by this thread, for {@link #addAllocs},
+     * or -1 if the stats are disabled.
+     */
+    @SuppressWarnings("deprecation")
+    long startAllocs() {
+        return mEnabled ? Debug.getThreadAllocCount() : -1L;
+    }
+
+    /**
+     * Adds the objects allocated by this thread since `start` to `times[ALLOCS]`.
+     */
+    @SuppressWarnings("deprecation")
+    void addAllocs(@Nullable final long[] times, final long start) {
+        if (mEnabled && start >= 0L && times != null) {
+            times[ALLOCS] += Math.max(0L, Debug.getThreadAllocCount() - start);
+        }
+    }
+
+    /**
+     * Adds the times and allocations of the chunks of a request to `times`.
+     */
+    static void addChunks(@Nonnull final long[] times, @Nonnull final long[][] chunks) {
+        for (long[] chunk : chunks) {
+            for (int i = 0; i < SLOTS; i++) {
+                times[i] += chunk[i];
+            }
+        }
+    }
+
+    /**
+     * Records the times of a request, one sample per phase. Requests without a
+     * total time, because they started with the stats disabled, are ignored.
+     */
+    void recordTimes(@Nonnull final String method, @Nonnull final long[] times) {
+        if (!mEnabled || times[TOTAL] == 0L) {
+            return;
+        }
+        final Histogram[] histograms = getHistograms(method);
+
+        for (int phase = 0; phase < PHASES; phase++) {
+            histograms[phase].add(times[phase]);
+        }
+        getAllocations(method).add(times[ALLOCS]);
+    }
+
+    void countLayout(final boolean boring) {
+        if (mEnabled) {
+            (boring ? mBoringLayouts : mStaticLayouts).incrementAndGet();
+        }
+    }
+
+    static void beginSection(@Nonnull final String name) {
+        Systrace.beginSection(Systrace.TRACE_TAG_REACT_JAVA_BRIDGE, name);
+    }
+
+    static void endSection() {
+        Systrace.endSection(Systrace.TRACE_TAG_REACT_JAVA_BRIDGE);
+    }
+
+    void reset() {
+        mMethods.clear();
+        mAllocations.clear();
+        mBoringLayouts.set(0);
+        mStaticLayouts.set(0);
+    }
+
+    @Nonnull
+    WritableMap toMap() {
+        final WritableMap methods = Arguments.createMap();
+
+        for (String method : mMethods.keySet()) {
+            final Histogram[] histograms = mMethods.get(method);
+            final WritableMap phases = Arguments.createMap();
+
+            for (int i = 0; i < histograms.length; i++) {
+                phases.putMap(PHASE_NAMES[i], histograms[i].toMap());
+            }
+            phases.putMap("allocations", getAllocations(method).toMap());
+            methods.putMap(method, phases);
+        }
+
+        final WritableMap stats = Arguments.createMap();
+        stats.putBoolean("enabled", mEnabled);
+        stats.putDouble("boringLayouts", mBoringLayouts.get());
+        stats.putDouble("staticLayouts", mStaticLayouts.get());
+        stats.putMap("methods", methods);
+        return stats;
+    }
+
+    @Nonnull
+    private Histogram[] getHistograms(@Nonnull final String method) {
+        Histogram[] histograms = mMethods.get(method);
+
+        if (histograms == null) {
+            histograms = new Histogram[PHASES];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new Histogram();
+            }
+            final Histogram[] prev = mMethods.putIfAbsent(method, histograms);
+            if (prev != null) {
+                histograms = prev;
+            }
+        }
+        return histograms;
+    }
+
+    @Nonnull
+    private Counter getAllocations(@Nonnull final String method) {
+        Counter counter = mAllocations.get(method);
+
+        if (counter == null) {
+            counter = new Counter();
+            final Counter prev = mAllocations.putIfAbsent(method, counter);
+            if (prev != null) {
+                counter = prev;
+            }
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.amarcruz.rntextsize;
+
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.TextPaint;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Compiled text style.
+ *
+ * Holds a TextPaint with the size, typeface and letter spacing of the user specs
+ * already applied, so texts with a single style can be measured without spans.
+ * This is the same result of {@link RNTextSizeSpannedText}, but without the
+ * allocation of the spans and their resolution for each run of characters.
+ */
+final class RNTextSizeStyle {
+
+    final String key;
+    final RNTextSizeConf conf;
+    final boolean includeFontPadding;
+    final int textBreakStrategy;
+
+    /** Font size in pixels */
+    final float fontSize;
+
+    /** Letter spacing in pixels, NaN if not used */
+    final float letterSpacing;
+
+    @Nullable final Typeface typeface;
+
+    private final TextPaint mPaint;
+    private final float mUnitScale;
+
+    RNTextSizeStyle(
+            @Nonnull final ReactApplicationContext context,
+            @Nonnull final RNTextSizeConf conf
+    ) {
+        key = makeKey(conf);
+        this.conf = conf;
+        mUnitScale = conf.scale(1f);
+        includeFontPadding = conf.includeFontPadding;
+        textBreakStrategy = conf.getTextBreakStrategy();
+        fontSize = (float) Math.ceil(conf.scale(conf.fontSize));
+
+        // Like RNTextSizeSpannedText, set the typeface only if the user provided any
+        // font property, so we get the same font selected by TextPaint by default.
+        typeface = conf.fontFamily != null || conf.hasFontStyle
+                ? RNTextSizeConf.getFont(context, conf.fontFamily, conf.fontStyle)
+                : null;
+
+        // letterSpacing is converted to ems with the final font size
+        letterSpacing = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && !Float.isNaN(conf.letterSpacing) ? conf.scale(conf.letterSpacing) : Float.NaN;
+
+        mPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        mPaint.setTextSize(fontSize);
+        if (typeface != null) {
+            mPaint.setTypeface(typeface);
+        }
+        if (!Float.isNaN(letterSpacing)) {
+            mPaint.setLetterSpacing(letterSpacing / fontSize);
+        }
+    }
+
+    /**
+     * Canonical key of the options that affect the style. It includes the scaled
+     * values, so the key changes if the density or the font scale changes.
+     */
+    @Nonnull
+    static String makeKey(@Nonnull final RNTextSizeConf conf) {
+        return new StringBuilder(48)
+                .append(conf.fontFamily).append('|')
+                .append(conf.hasFontStyle ? conf.fontStyle : -1).append('|')
+                .append(conf.scale(conf.fontSize)).append('|')
+                .append(Float.isNaN(conf.letterSpacing) ? Float.NaN : conf.scale(conf.letterSpacing)).append('|')
+                .append(conf.includeFontPadding ? 'P' : 'N')
+                .append(conf.getTextBreakStrategy())
+                .toString();
+    }
+
+    /**
+     * Returns `false` if the density or the font scale has changed since this
+     * style was compiled.
+     */
+    boolean isCurrent(@Nonnull final RNTextSizeConf conf) {
+        return conf.scale(1f) == mUnitScale;
+    }
+
+    /**
+     * Returns a new TextPaint with this style. TextPaint is not thread-safe, each
+     * thread must use its own instance.
+     */
+    @Nonnull
+    TextPaint newPaint() {
+        return new TextPaint(mPaint);
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.amarcruz.rntextsize;
+
+import android.content.Context;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Report of a warm-up, the measurement of the texts of a manifest done in background
+ * to load the typefaces, fill the caches and run the layout code before the first
+ * render that needs it.
+ *
+ * The manifest is an array of objects with the same properties of `flatHeights`,
+ * each one with a style and the representative texts of this style. It can be
+ * passed to `warmUp` or bundled as a JSON file in assets.
+ */
+final class RNTextSizeWarmUp {
+
+    @Nonnull final String source;
+    final int styles;
+    final int texts;
+    final int errors;
+    final int diskCacheHits;
+    final long typefaceNanos;
+    final long layoutNanos;
+    final long totalNanos;
+
+    RNTextSizeWarmUp(
+            @Nonnull final String source,
+            final int styles,
+            final int texts,
+            final int errors,
+            final int diskCacheHits,
+            final long typefaceNanos,
+            final long layoutNanos,
+            final long totalNanos
+    ) {
+        this.source = source;
+        this.styles = styles;
+        this.texts = texts;
+        this.errors = errors;
+        this.diskCacheHits = diskCacheHits;
+        this.typefaceNanos = typefaceNanos;
+        this.layoutNanos = layoutNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Report with the times in milliseconds.
+     */
+    @Nonnull
+    WritableMap toMap() {
+        final WritableMap map = Arguments.createMap();
+        map.putString("source", source);
+        map.putInt("styles", styles);
+        map.putInt("texts", texts);
+        map.putInt("errors", errors);
+        map.putInt("diskCacheHits", diskCacheHits);
+        map.putDouble("typefaceTime", typefaceNanos / 1e6);
+        map.putDouble("layoutTime", layoutNanos / 1e6);
+        map.putDouble("totalTime", totalNanos / 1e6);
+        return map;
+    }
+
+    /**
+     * Reads the manifest from a JSON file in assets, as an array of specs.
+     */
+    @Nonnull
+    static WritableArray readAsset(
+            @Nonnull final Context context,
+            @Nonnull final String fileName
+    ) throws IOException, JSONException {
+        final InputStream in = context.getAssets().open(fileName);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        final JSONArray json = new JSONArray(out.toString("UTF-8"));
+        final WritableArray manifest = Arguments.createArray();
+        for (int ix = 0; ix < json.length(); ix++) {
+            final JSONObject specs = json.optJSONObject(ix);
+            if (specs != null) {
+                manifest.pushMap(toMap(specs));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Converts the JSON specs, nested objects are ignored.
+     */
+    @Nonnull
+    private static WritableMap toMap(@Nonnull final JSONObject specs) throws JSONException {
+        final WritableMap map = Arguments.createMap();
+        final Iterator<String> keys = specs.keys();
+
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            final Object value = specs.get(key);
+
+            if (value instanceof String) {
+                map.putString(key, (String) value);
+            } else if (value instanceof Boolean) {
+                map.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Integer) {
+                map.putInt(key, (Integer) value);
+            } else if (value instanceof Number) {
+                map.putDouble(key, ((Number) value).doubleValue());
+            } else if (value instanceof JSONArray) {
+                map.putArray(key, toArray((JSONArray) value));
+            }
+        }
+        return map;
+    }
+
+    @Nonnull
+    private static WritableArray toArray(@Nonnull final JSONArray json) throws JSONException {
+        final WritableArray array = Arguments.createArray();
+
+        for (int ix = 0; ix < json.length(); ix++) {
+            final Object value = json.get(ix);
+
+            if (value instanceof String) {
+                array.pushString((String) value);
+            } else if (value instanceof Number) {
+                array.pushDouble(((Number) value).doubleValue());
+            } else {
+                array.pushNull();
+            }
+        }
+        return array;
+    }
+}
@@ -59,6 +59,17 @@ declare module "react-native-text-size" {
     _hash: number,
   }
 
+  export type TSFontFace = {
+    /** Name of the font in assets, to use as `fontFamily`. */
+    fontFamily: string;
+    /** Typographic family name, from the font file. */
+    familyName: string;
+    subfamilyName: string;
+    fullName: string;
+    fontWeight: TSFontWeight;
+    fontStyle: TSFontStyle;
+  }
+
   export interface TSFontSpecs {
     fontFamily?: string;
     fontSize?: number;
@@ -72,6 +83,17 @@ declare module "react-native-text-size" {
     includeFontPadding?: boolean;
     /** @platform android (SDK 23+) */
     textBreakStrategy?: TSTextBreakStrategy;
+    /**
+     * @platform android
+     * ID returned by `registerStyle`, replaces the other font properties.
+     */
+    styleId?: number;
+    /**
+     * @platform android (SDK 28+)
+     * Cache the shaping of the text with PrecomputedText.
+     * @default false
+     */
+    usePrecomputedText?: boolean;
   }
 
   export type TSFontForStyle = {
@@ -95,6 +117,97 @@ declare module "react-native-text-size" {
     width?: number;
     /** @default true */
     allowFontScaling?: boolean;
+    /**
+     * @platform android
+     * Measure big arrays in parallel.
+     * @default true
+     */
+    parallel?: boolean;
+    /**
+     * @platform android
+     * Max number of lines, the result is clamped to the visible lines.
+     */
+    numberOfLines?: number;
+    /**
+     * @platform android
+     * Max height, the result is clamped to the lines that fit in it.
+     */
+    maxHeight?: number;
+    /**
+     * @platform android
+     * ID to cancel this request, a new request with the same ID cancels the previous one.
+     */
+    requestId?: string;
+    /**
+     * @platform android
+     * Return the result as a base64 string with the packed arrays, see "Binary results" in the README.
+     * @default false
+     */
+    binary?: boolean;
+  }
+
+  export interface TSHeightsStreamParams extends TSHeightsParams {
+    /** Identifies the events of this request. */
+    requestId: string;
+    /** Number of heights in each event. @default 100 */
+    chunkSize?: number;
+  }
+
+  /** Payload of the `RNTextSizeHeights` event. */
+  export type TSHeightsEvent = {
+    requestId: string;
+    /** Index of the first text of this chunk. */
+    start: number;
+    /** Base64 string if the `binary` option is used. */
+    heights: number[] | string;
+    total: number;
+    /** From 0 to 1. */
+    progress: number;
+    done: boolean;
+  }
+
+  export type TSHeightsEstimateResult = {
+    heights: number[];
+    /** `true` for the heights that are approximated. */
+    estimated: boolean[];
+  }
+
+  export interface TSFitFontSizeParams extends TSMeasureParams {
+    /** Width of the box. */
+    width: number;
+    /** Max height of the text, `height` or `numberOfLines` is required. */
+    height?: number;
+    /** Max number of lines of the text, `height` or `numberOfLines` is required. */
+    numberOfLines?: number;
+    /** @default 1 */
+    minFontSize?: number;
+    /** @default fontSize */
+    maxFontSize?: number;
+  }
+
+  export interface TSFlatFitFontSizeParams extends TSHeightsParams {
+    /** Width of the box. */
+    width: number;
+    /** Max height of the text, `height` or `numberOfLines` is required. */
+    height?: number;
+    /** @default 1 */
+    minFontSize?: number;
+    /** @default fontSize */
+    maxFontSize?: number;
+  }
+
+  export interface TSFlatMeasureParams extends TSHeightsParams {
+    /** Width for the text in the same position, overrides `width` if it is greater than zero. */
+    widths?: Array<number | null>;
+    /** @default true */
+    usePreciseWidth?: boolean;
+  }
+
+  export type TSFlatMeasureResult = {
+    width: number[];
+    height: number[];
+    lastLineWidth: number[];
+    lineCount: number[];
   }
 
   export interface TSMeasureParams extends TSFontSpecs {
@@ -127,6 +240,83 @@ declare module "react-native-text-size" {
      * for the required line number.
      */
     lineInfoForLine?: number;
+    /**
+     * @platform android
+     * If `true`, the result will include the `linesInfo` property with the info of
+     * all the lines, or the lines from `linesInfoStart` to `linesInfoEnd` (exclusive).
+     * @default false
+     */
+    linesInfo?: boolean;
+    linesInfoStart?: number;
+    linesInfoEnd?: number;
+    /**
+     * @platform android
+     * Measure and cache each paragraph alone. Using it with `lineInfoForLine`,
+     * `linesInfo`, `numberOfLines` or `maxHeight` rejects with `E_INVALID_PARAMETER`.
+     * @default false
+     */
+    splitParagraphs?: boolean;
+    /**
+     * @platform android
+     * Max number of lines, the result is clamped to the visible lines.
+     */
+    numberOfLines?: number;
+    /**
+     * @platform android
+     * Max height, the result is clamped to the lines that fit in it.
+     */
+    maxHeight?: number;
+    /**
+     * @platform android
+     * ID to cancel this request, a new request with the same ID cancels the previous one.
+     */
+    requestId?: string;
+  }
+
+  export interface TSMeasureWidthsParams extends TSMeasureParams {
+    /** Widths to measure the text. */
+    widths: number[];
+    /**
+     * @platform android
+     * Return the result as a base64 string with the packed arrays, see "Binary results" in the README.
+     * @default false
+     */
+    binary?: boolean;
+  }
+
+  export interface TSFragment {
+    /** Text of the fragment. */
+    text: string;
+    fontFamily?: string;
+    fontSize?: number;
+    fontStyle?: TSFontStyle;
+    fontWeight?: TSFontWeight;
+    letterSpacing?: number;
+    allowFontScaling?: boolean;
+  }
+
+  export interface TSMeasureFragmentsParams extends TSFontSpecs {
+    /** Fragments of the text, the missing font properties are taken from these params. */
+    fragments: TSFragment[];
+    width?: number;
+    allowFontScaling?: boolean;
+    includeFontPadding?: boolean;
+    usePreciseWidth?: boolean;
+    lineInfoForLine?: number;
+    /** @platform android */
+    textBreakStrategy?: TSTextBreakStrategy;
+    /** Max number of lines, the result is clamped to the visible lines. */
+    numberOfLines?: number;
+    /** Max height, the result is clamped to the lines that fit in it. */
+    maxHeight?: number;
+    /** ID to cancel this request. */
+    requestId?: string;
+  }
+
+  export type TSMeasureWidthsResult = {
+    width: number[];
+    height: number[];
+    lineCount: number[];
   }
 
   export type TSMeasureResult = {
@@ -151,6 +341,11 @@ declare module "react-native-text-size" {
      * Number of lines, taking into account hard and automatic line breaks.
      */
     lineCount: number;
+    /**
+     * @platform android
+     * `true` if there are lines hidden by the `numberOfLines` or `maxHeight` options.
+     */
+    truncated?: boolean;
     /**
      * Line information, if the `lineInfoForLine` option is given.
      */
@@ -169,14 +364,154 @@ declare module "react-native-text-size" {
       /** Horizontal extent of this line, including leading margin indent, but excluding trailing whitespace. */
       width: number;
     };
+    /**
+     * @platform android
+     * Info of all the lines or the requested range, if the `linesInfo` option is `true`.
+     */
+    linesInfo?: {
+      /** Line number of the first element of the arrays. */
+      line: number;
+      start: number[];
+      end: number[];
+      bottom: number[];
+      width: number[];
+    };
+  }
+
+  export type TSCacheStats = {
+    /** Approximate memory used by the cached entries, in bytes. */
+    size: number,
+    maxSize: number,
+    hits: number,
+    misses: number,
+    evictions: number,
+    /** Number of times the cache was cleared due to density or font scale changes. */
+    invalidations: number,
+    typefaces: {
+      size: number,
+      hits: number,
+      misses: number,
+    },
+    /** Only if the disk cache is enabled, sizes in entries. */
+    disk?: {
+      loaded: boolean,
+      size: number,
+      maxSize: number,
+      hits: number,
+      misses: number,
+    },
+  }
+
+  export type TSWarmUpReport = {
+    /** "manifest" for `warmUp`, or the name of the asset. */
+    source: string;
+    styles: number;
+    texts: number;
+    errors: number;
+    /** Texts read from the disk cache, without layout. */
+    diskCacheHits: number;
+    /** Times in milliseconds. */
+    typefaceTime: number;
+    layoutTime: number;
+    totalTime: number;
+  }
+
+  export type TSStatsHistogram = {
+    count: number,
+    totalMs: number,
+    meanUs: number,
+    maxUs: number,
+    /** Percentiles, rounded up to the next power of 2. */
+    p50Us: number,
+    p90Us: number,
+    p99Us: number,
+  }
+
+  export type TSStats = {
+    enabled: boolean,
+    boringLayouts: number,
+    staticLayouts: number,
+    methods: {
+      [method: string]: {
+        conf: TSStatsHistogram,
+        style: TSStatsHistogram,
+        layout: TSStatsHistogram,
+        marshal: TSStatsHistogram,
+        total: TSStatsHistogram,
+        /** Objects allocated per call. */
+        allocations: { count: number; mean: number; max: number },
+      },
+    },
   }
 
   interface TextSizeStatic {
     measure(params: TSMeasureParams): Promise<TSMeasureResult>;
+    /** @platform android */
+    measureSync(params: TSMeasureParams): TSMeasureResult;
+    /** @platform android */
+    measureWidths(params: TSMeasureWidthsParams & { binary: true }): Promise<string>;
+    /** @platform android */
+    measureWidths(params: TSMeasureWidthsParams): Promise<TSMeasureWidthsResult>;
+    /** @platform android */
+    measureFragments(params: TSMeasureFragmentsParams): Promise<TSMeasureResult>;
+    /** @platform android */
+    createSession(params: TSFontSpecs & {
+      width?: number,
+      allowFontScaling?: boolean,
+      includeFontPadding?: boolean,
+      usePreciseWidth?: boolean,
+    }): Promise<number>;
+    /** @platform android */
+    sessionMeasure(sessionId: number, text: string): Promise<TSMeasureResult>;
+    /** @platform android */
+    closeSession(sessionId: number): Promise<boolean>;
+    /** @platform android */
+    flatHeights(params: TSHeightsParams & { binary: true }): Promise<string>;
     flatHeights(params: TSHeightsParams): Promise<number[]>;
+    /** @platform android */
+    flatHeightsStream(params: TSHeightsStreamParams): Promise<number>;
+    /** @platform android, the `binary` option is not supported */
+    flatHeightsEstimate(params: TSHeightsParams): Promise<TSHeightsEstimateResult>;
+    /** @platform android */
+    flatMeasure(params: TSFlatMeasureParams & { binary: true }): Promise<string>;
+    /** @platform android */
+    flatMeasure(params: TSFlatMeasureParams): Promise<TSFlatMeasureResult>;
+    /** @platform android */
+    fitFontSize(params: TSFitFontSizeParams): Promise<number>;
+    /** @platform android */
+    flatFitFontSize(params: TSFlatFitFontSizeParams & { binary: true }): Promise<string>;
+    /** @platform android */
+    flatFitFontSize(params: TSFlatFitFontSizeParams): Promise<number[]>;
     specsForTextStyles(): Promise<{ [key: string]: TSFontForStyle }>;
     fontFromSpecs(specs?: TSFontSpecs): Promise<TSFontInfo>;
+    /** @platform android */
+    fontsFromSpecs(specs: TSFontSpecs[]): Promise<Array<TSFontInfo | null>>;
     fontFamilyNames(): Promise<string[]>;
+    fontNamesForFamilyName(fontFamily: string): Promise<string[] | null>;
+    /** @platform android */
+    fontFacesForFamilyName(fontFamily: string): Promise<TSFontFace[] | null>;
+    /** @platform android */
+    getCacheStats(): Promise<TSCacheStats>;
+    /** @platform android */
+    clearCache(): Promise<void>;
+    /** @platform android */
+    cancel(requestId: string): Promise<boolean>;
+    /** @platform android */
+    preloadFonts(fontFamilies: string[]): Promise<void>;
+    /** @platform android */
+    warmUp(manifest: TSHeightsParams[]): Promise<TSWarmUpReport>;
+    /** @platform android */
+    getWarmUpReport(): Promise<TSWarmUpReport | null>;
+    /** @platform android */
+    registerStyle(specs: TSFontSpecs & { allowFontScaling?: boolean }): Promise<number>;
+    /** @platform android */
+    unregisterStyle(styleId: number): Promise<boolean>;
+    /** @platform android */
+    setStatsEnabled(enabled: boolean): Promise<void>;
+    /** @platform android */
+    getStats(): Promise<TSStats>;
+    /** @platform android */
+    resetStats(): Promise<void>;
   }
 
   const TextSize: TextSizeStatic;